@@ -0,0 +1,56 @@
+package bench;
+
+import org.openjdk.jmh.infra.Blackhole;
+
+import dsl.DoubleSink;
+import dsl.IntSink;
+import dsl.Sink;
+
+// Sinks that hand every output item to a JMH Blackhole, so that the
+// JIT cannot eliminate the work that produced it.
+
+public class BlackholeSink<A> implements Sink<A> {
+
+	private final Blackhole bh;
+
+	public BlackholeSink(Blackhole bh) {
+		this.bh = bh;
+	}
+
+	@Override
+	public void next(A item) {
+		bh.consume(item);
+	}
+
+	@Override
+	public void end() {
+		// nothing to do
+	}
+
+	public static IntSink ints(Blackhole bh) {
+		return new IntSink() {
+			@Override
+			public void next(int item) {
+				bh.consume(item);
+			}
+			@Override
+			public void end() {
+				// nothing to do
+			}
+		};
+	}
+
+	public static DoubleSink doubles(Blackhole bh) {
+		return new DoubleSink() {
+			@Override
+			public void next(double item) {
+				bh.consume(item);
+			}
+			@Override
+			public void end() {
+				// nothing to do
+			}
+		};
+	}
+
+}
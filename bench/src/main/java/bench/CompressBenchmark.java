@@ -0,0 +1,71 @@
+package bench;
+
+import java.io.FileNotFoundException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import compress.Compress;
+import dsl.Q;
+import dsl.Query;
+import dsl.S;
+import dsl.SCollector;
+
+// Compression and decompression of the ECG samples of Compress.main
+// (scaled from [0,2048) to [0,256)).
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class CompressBenchmark {
+
+	@Param({"../data/100.csv"})
+	public String file;
+
+	private Integer[] samples;
+	private Integer[] compressed;
+
+	@Setup
+	public void setup() throws FileNotFoundException {
+		Integer[] raw = Driver.ecg(file);
+		samples = new Integer[raw.length];
+		for (int i=0; i<raw.length; i++) {
+			samples[i] = raw[i] / 8;
+		}
+		SCollector<Integer> sink = S.collector();
+		Driver.run(samples, Compress.compress(), sink);
+		compressed = sink.list.toArray(new Integer[0]);
+		Driver.silenceStdout();
+	}
+
+	@Benchmark
+	public void compress(Blackhole bh) {
+		Driver.run(samples, Compress.compress(), new BlackholeSink<>(bh));
+	}
+
+	@Benchmark
+	public void decompress(Blackhole bh) {
+		Driver.run(compressed, Compress.decompress(), new BlackholeSink<>(bh));
+	}
+
+	@Benchmark
+	public void roundTrip(Blackhole bh) {
+		Query<Integer,Integer> q = Q.pipeline(Compress.compress(), Compress.decompress());
+		Driver.run(samples, q, new BlackholeSink<>(bh));
+	}
+
+}
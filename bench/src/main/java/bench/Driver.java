@@ -0,0 +1,93 @@
+package bench;
+
+import java.io.FileNotFoundException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import dsl.DoubleQuery;
+import dsl.DoubleSink;
+import dsl.IntQuery;
+import dsl.IntSink;
+import dsl.Query;
+import dsl.Sink;
+import ecg.IteratorECG;
+
+// Helpers shared by the benchmarks. Unlike Q.execute, the drivers do
+// not measure or print anything: JMH does the measuring.
+
+public class Driver {
+
+	private Driver() {
+		// nothing to do
+	}
+
+	public static <A,B> void run(A[] items, Query<A,B> q, Sink<B> sink) {
+		q.start(sink);
+		for (A item : items) {
+			q.next(item, sink);
+		}
+		q.end(sink);
+	}
+
+	public static void run(int[] items, IntQuery q, IntSink sink) {
+		q.start(sink);
+		for (int item : items) {
+			q.next(item, sink);
+		}
+		q.end(sink);
+	}
+
+	public static void run(double[] items, DoubleQuery q, DoubleSink sink) {
+		q.start(sink);
+		for (double item : items) {
+			q.next(item, sink);
+		}
+		q.end(sink);
+	}
+
+	public static void runBatch(int[] items, int batchSize, IntQuery q, IntSink sink) {
+		q.start(sink);
+		int[] batch = new int[batchSize];
+		for (int i=0; i<items.length; i+=batchSize) {
+			int len = Math.min(batchSize, items.length - i);
+			System.arraycopy(items, i, batch, 0, len);
+			q.nextBatch(batch, len, sink);
+		}
+		q.end(sink);
+	}
+
+	// 1, 2, ..., n (boxed once, so that the benchmarks measure the
+	// queries and not the source)
+	public static Integer[] boxedInts(int n) {
+		Integer[] items = new Integer[n];
+		for (int i=0; i<n; i++) {
+			items[i] = i + 1;
+		}
+		return items;
+	}
+
+	public static int[] ints(int n) {
+		int[] items = new int[n];
+		for (int i=0; i<n; i++) {
+			items[i] = i + 1;
+		}
+		return items;
+	}
+
+	public static Integer[] ecg(String file) throws FileNotFoundException {
+		List<Integer> list = new ArrayList<>();
+		IteratorECG it = new IteratorECG(file);
+		while (it.hasNext()) {
+			list.add(it.next());
+		}
+		return list.toArray(new Integer[0]);
+	}
+
+	// Q.execute, some sinks and HeartRate print to stdout.
+	public static void silenceStdout() {
+		System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+	}
+
+}
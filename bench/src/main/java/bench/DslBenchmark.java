@@ -0,0 +1,137 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import dsl.IntQuery;
+import dsl.Q;
+import dsl.Query;
+
+// The scenarios of Examples.main, plus their optimized, unboxed and
+// batch variants. Each invocation pushes the whole stream 1..n.
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class DslBenchmark {
+
+	@Param({"1000000"})
+	public int n;
+
+	private Integer[] boxed;
+	private int[] ints;
+
+	@Setup
+	public void setup() {
+		boxed = Driver.boxedInts(n);
+		ints = Driver.ints(n);
+	}
+
+	@Benchmark
+	public void map(Blackhole bh) {
+		Query<Integer,Integer> q = Q.map(x -> 2*x);
+		Driver.run(boxed, q, new BlackholeSink<>(bh));
+	}
+
+	@Benchmark
+	public void filter(Blackhole bh) {
+		Query<Integer,Integer> q = Q.filter(x -> x % 2 == 0);
+		Driver.run(boxed, q, new BlackholeSink<>(bh));
+	}
+
+	@Benchmark
+	public void fold(Blackhole bh) {
+		Query<Integer,Long> q = Q.fold(0L, (x, y) -> x + y);
+		Driver.run(boxed, q, new BlackholeSink<>(bh));
+	}
+
+	@Benchmark
+	public void foldAvg(Blackhole bh) {
+		Query<Integer,Double> q = Q.pipeline(Q.map(x -> Double.valueOf(x)), Q.foldAvg());
+		Driver.run(boxed, q, new BlackholeSink<>(bh));
+	}
+
+	@Benchmark
+	public void scan(Blackhole bh) {
+		Query<Integer,Long> q = Q.scan(0L, (x, y) -> x + y);
+		Driver.run(boxed, q, new BlackholeSink<>(bh));
+	}
+
+	@Benchmark
+	public void sWindowNaive(Blackhole bh) {
+		Query<Integer,Integer> q = Q.sWindowNaive(10, 0, (x, y) -> x + y);
+		Driver.run(boxed, q, new BlackholeSink<>(bh));
+	}
+
+	@Benchmark
+	public void sWindowInv(Blackhole bh) {
+		Query<Integer,Integer> q = Q.sWindowInv(10, 0, (x, y) -> x + y, (x, y) -> x - y);
+		Driver.run(boxed, q, new BlackholeSink<>(bh));
+	}
+
+	@Benchmark
+	public void sWindow2(Blackhole bh) {
+		Query<Integer,Integer> q = Q.sWindow2((x, y) -> y - x);
+		Driver.run(boxed, q, new BlackholeSink<>(bh));
+	}
+
+	@Benchmark
+	public void mapMap(Blackhole bh) {
+		Query<Integer,Integer> q = Q.pipeline(Q.map(x -> 2*x), Q.map(x -> 2*x));
+		Driver.run(boxed, q, new BlackholeSink<>(bh));
+	}
+
+	@Benchmark
+	public void filterMapFold(Blackhole bh) {
+		Query<Integer,Long> q = Q.pipeline(
+			Q.filter(x -> x % 2 == 0), Q.map(x -> 2*x), Q.fold(0L, (x, y) -> x + y)
+		);
+		Driver.run(boxed, q, new BlackholeSink<>(bh));
+	}
+
+	@Benchmark
+	public void filterMapFoldOptimized(Blackhole bh) {
+		Query<Integer,Long> q = Q.optimize(Q.pipeline(
+			Q.filter(x -> x % 2 == 0), Q.map(x -> 2*x), Q.fold(0L, (x, y) -> x + y)
+		));
+		Driver.run(boxed, q, new BlackholeSink<>(bh));
+	}
+
+	@Benchmark
+	public void filterMapFoldUnboxed(Blackhole bh) {
+		IntQuery q = Q.intPipeline(
+			Q.intFilter(x -> x % 2 == 0), Q.intMap(x -> 2*x), Q.intFold(0, (x, y) -> x + y)
+		);
+		Driver.run(ints, q, BlackholeSink.ints(bh));
+	}
+
+	@Benchmark
+	public void filterMapFoldBatch(Blackhole bh) {
+		IntQuery q = Q.intPipeline(
+			Q.intFilter(x -> x % 2 == 0), Q.intMap(x -> 2*x), Q.intFold(0, (x, y) -> x + y)
+		);
+		Driver.runBatch(ints, 4096, q, BlackholeSink.ints(bh));
+	}
+
+	@Benchmark
+	public void mapMapAsync(Blackhole bh) {
+		Query<Integer,Integer> q = Q.pipelineAsync(Q.map(x -> 2*x), Q.map(x -> 2*x), 4096);
+		Driver.run(boxed, q, new BlackholeSink<>(bh));
+	}
+
+}
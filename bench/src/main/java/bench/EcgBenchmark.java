@@ -0,0 +1,264 @@
+package bench;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import dsl.Q;
+import ecg.BinaryECG;
+import ecg.CsvReaderECG;
+import ecg.CsvSampleReader;
+import ecg.HeartRate;
+import ecg.IteratorECG;
+import ecg.PeakDetection;
+import ecg.PrefetchReader;
+import ecg.SampleBatch;
+import ecg.TrainModel;
+
+// ECG analysis over data/100.csv: parsing, the curve length transform,
+// peak detection and the heart rate measures. The samples are parsed
+// once in setup, except in the 'parse' benchmarks (IteratorECG and
+// CsvReaderECG) and the 'binary' benchmarks, which read a copy of the
+// file in the format of BinaryECG. Their readers are opened in setup
+// (see OpenCsv and the like).
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class EcgBenchmark {
+
+	// relative to the directory from which the benchmarks are started
+	@Param({"../data/100.csv"})
+	public String file;
+
+	private Integer[] samples;
+	private Path binary;
+
+	@Setup
+	public void setup() throws IOException {
+		samples = Driver.ecg(file);
+		binary = Files.createTempFile("ecg", ".ecgb");
+		BinaryECG.convert(file, binary.toString(), 360);
+		Driver.silenceStdout();
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		Files.delete(binary);
+	}
+
+	// The readers of the parsing benchmarks are opened before every
+	// invocation and closed after it, so that only the reading is
+	// measured. (Level.Invocation is fine here: an invocation reads the
+	// whole file, which takes far longer than the bookkeeping of JMH.)
+
+	@State(Scope.Thread)
+	public static class OpenIterator {
+		IteratorECG it;
+
+		@Setup(Level.Invocation)
+		public void open(EcgBenchmark b) throws FileNotFoundException {
+			it = new IteratorECG(b.file);
+		}
+
+		@TearDown(Level.Invocation)
+		public void close() {
+			it.scanner.close();
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class OpenCsv {
+		CsvReaderECG reader;
+
+		@Setup(Level.Invocation)
+		public void open(EcgBenchmark b) throws IOException {
+			reader = new CsvReaderECG(b.file);
+		}
+
+		@TearDown(Level.Invocation)
+		public void close() {
+			reader.close();
+		}
+	}
+
+	// The worker thread is started (and starts reading ahead) in setup.
+	@State(Scope.Thread)
+	public static class OpenPrefetch {
+		PrefetchReader reader;
+
+		@Setup(Level.Invocation)
+		public void open(EcgBenchmark b) throws IOException {
+			reader = new PrefetchReader(new CsvReaderECG(b.file));
+		}
+
+		@TearDown(Level.Invocation)
+		public void close() {
+			reader.close();
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class OpenSamples {
+		CsvSampleReader reader;
+
+		@Setup(Level.Invocation)
+		public void open(EcgBenchmark b) throws IOException {
+			reader = new CsvSampleReader(b.file);
+		}
+
+		@TearDown(Level.Invocation)
+		public void close() {
+			reader.close();
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class OpenBinary {
+		BinaryECG.Reader reader;
+
+		@Setup(Level.Invocation)
+		public void open(EcgBenchmark b) throws IOException {
+			reader = BinaryECG.open(b.binary.toString()).reader(0);
+		}
+
+		@TearDown(Level.Invocation)
+		public void close() {
+			reader.close();
+		}
+	}
+
+	@Benchmark
+	public void parse(OpenIterator open, Blackhole bh) {
+		IteratorECG it = open.it;
+		while (it.hasNext()) {
+			bh.consume(it.nextInt());
+		}
+	}
+
+	@Benchmark
+	public void parseCsv(OpenCsv open, Blackhole bh) {
+		CsvReaderECG it = open.reader;
+		while (it.hasNext()) {
+			bh.consume(it.nextInt());
+		}
+	}
+
+	@Benchmark
+	public void parseCsvFill(OpenCsv open, Blackhole bh) {
+		CsvReaderECG reader = open.reader;
+		int[] batch = new int[4096];
+		int len = reader.fill(batch, 0, batch.length);
+		while (len > 0) {
+			bh.consume(batch);
+			len = reader.fill(batch, 0, batch.length);
+		}
+	}
+
+	@Benchmark
+	public void parsePrefetch(OpenPrefetch open, Blackhole bh) {
+		PrefetchReader reader = open.reader;
+		while (reader.nextBatch() > 0) {
+			bh.consume(reader.batch());
+		}
+	}
+
+	@Benchmark
+	public void peaksPrefetch(OpenPrefetch open, Blackhole bh) {
+		Q.execute(open.reader, PeakDetection.qPeaks(), new BlackholeSink<>(bh));
+	}
+
+	@Benchmark
+	public void parseSamplesFill(OpenSamples open, Blackhole bh) {
+		CsvSampleReader reader = open.reader;
+		SampleBatch batch = new SampleBatch(reader.channels(), 4096);
+		while (reader.fill(batch) > 0) {
+			bh.consume(batch);
+		}
+	}
+
+	@Benchmark
+	public void peaksSamples(OpenSamples open, Blackhole bh) {
+		Q.execute(open.reader, PeakDetection.qPeaks(0), new BlackholeSink<>(bh));
+	}
+
+	@Benchmark
+	public void binary(OpenBinary open, Blackhole bh) {
+		BinaryECG.Reader it = open.reader;
+		while (it.hasNext()) {
+			bh.consume(it.nextInt());
+		}
+	}
+
+	@Benchmark
+	public void binaryFill(OpenBinary open, Blackhole bh) {
+		BinaryECG.Reader reader = open.reader;
+		int[] batch = new int[4096];
+		int len = reader.fill(batch, 0, batch.length);
+		while (len > 0) {
+			bh.consume(batch);
+			len = reader.fill(batch, 0, batch.length);
+		}
+	}
+
+	@Benchmark
+	public void length(Blackhole bh) {
+		Driver.run(samples, PeakDetection.qLength(), new BlackholeSink<>(bh));
+	}
+
+	@Benchmark
+	public void lengthAvg(Blackhole bh) {
+		Driver.run(samples, TrainModel.qLengthAvg(), new BlackholeSink<>(bh));
+	}
+
+	@Benchmark
+	public void peaks(Blackhole bh) {
+		Driver.run(samples, PeakDetection.qPeaks(), new BlackholeSink<>(bh));
+	}
+
+	@Benchmark
+	public void peaksAsync(Blackhole bh) {
+		Driver.run(samples, PeakDetection.qPeaksAsync(), new BlackholeSink<>(bh));
+	}
+
+	@Benchmark
+	public void heartRateAvg(Blackhole bh) {
+		Driver.run(samples, HeartRate.qHeartRateAvg(), new BlackholeSink<>(bh));
+	}
+
+	@Benchmark
+	public void sdnn(Blackhole bh) {
+		Driver.run(samples, HeartRate.qSDNN(), new BlackholeSink<>(bh));
+	}
+
+	@Benchmark
+	public void rmssd(Blackhole bh) {
+		Driver.run(samples, HeartRate.qRMSSD(), new BlackholeSink<>(bh));
+	}
+
+	@Benchmark
+	public void pnn50(Blackhole bh) {
+		Driver.run(samples, HeartRate.qPNN50(), new BlackholeSink<>(bh));
+	}
+
+}
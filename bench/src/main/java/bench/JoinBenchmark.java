@@ -0,0 +1,73 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiPredicate;
+import java.util.function.Function;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import dsl.Query;
+import ra.EquiJoin;
+import ra.ThetaJoin;
+import utils.Or;
+import utils.Pair;
+
+// The workload of RelationalAlgebra.main: n left items, each preceded
+// by m right items that join with it.
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class JoinBenchmark {
+
+	@Param({"100", "1000"})
+	public int n;
+
+	@Param({"100", "1000"})
+	public int m;
+
+	private Or<Integer,Double>[] items;
+
+	@SuppressWarnings("unchecked")
+	@Setup
+	public void setup() {
+		items = new Or[n * (m + 1)];
+		int k = 0;
+		for (int i=0; i<n; i++) {
+			for (int j=0; j<m; j++) {
+				items[k++] = Or.inr(i + (j / (double) m));
+			}
+			items[k++] = Or.inl(i);
+		}
+	}
+
+	@Benchmark
+	public void equiJoin(Blackhole bh) {
+		Function<Integer,Integer> f = x -> x;
+		Function<Double,Integer> g = x -> (int) Math.floor(x);
+		Query<Or<Integer,Double>,Pair<Integer,Double>> q = EquiJoin.from(f, g);
+		Driver.run(items, q, new BlackholeSink<>(bh));
+	}
+
+	@Benchmark
+	public void thetaJoin(Blackhole bh) {
+		BiPredicate<Integer,Double> theta = (i, x) -> Math.floor(x) == i;
+		Query<Or<Integer,Double>,Pair<Integer,Double>> q = ThetaJoin.from(theta);
+		Driver.run(items, q, new BlackholeSink<>(bh));
+	}
+
+}
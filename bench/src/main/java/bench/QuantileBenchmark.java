@@ -0,0 +1,79 @@
+package bench;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import dsl.DoubleQuery;
+import dsl.Q;
+import dsl.Query;
+
+// Sliding-window median and quantiles over one minute of a 360 Hz
+// signal (21,600 samples), for windows of 0.1 s to ~28 s. To keep up in
+// real time, an invocation must take less than 60 s.
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QuantileBenchmark {
+
+	@Param({"36", "360", "3600", "10000"})
+	public int wndSize;
+
+	@Param({"21600"})
+	public int n;
+
+	private double[] samples;
+	private Double[] boxed;
+
+	@Setup
+	public void setup() {
+		Random random = new Random(42);
+		samples = new double[n];
+		boxed = new Double[n];
+		for (int i=0; i<n; i++) {
+			samples[i] = 1024 + 200 * Math.sin(i / 50.0) + random.nextGaussian() * 20;
+			boxed[i] = samples[i];
+		}
+	}
+
+	@Benchmark
+	public void median(Blackhole bh) {
+		DoubleQuery q = Q.doubleSWindowMedian(wndSize);
+		Driver.run(samples, q, BlackholeSink.doubles(bh));
+	}
+
+	@Benchmark
+	public void quartiles(Blackhole bh) {
+		Query<Double,double[]> q = Q.sWindowQuantile(wndSize, 0.25, 0.5, 0.75);
+		Driver.run(boxed, q, new BlackholeSink<>(bh));
+	}
+
+	// sorting a copy of the window for every sample
+	@Benchmark
+	public void medianNaive(Blackhole bh) {
+		double[] window = new double[wndSize];
+		for (int i=wndSize; i<=n; i++) {
+			System.arraycopy(samples, i - wndSize, window, 0, wndSize);
+			Arrays.sort(window);
+			bh.consume(window[wndSize / 2]);
+		}
+	}
+
+}
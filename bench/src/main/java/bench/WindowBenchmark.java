@@ -0,0 +1,79 @@
+package bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import dsl.Monoid;
+import dsl.Q;
+import dsl.Query;
+
+// Sliding-window aggregation as the window grows. Every invocation
+// pushes wndSize + m random items, so every operator emits exactly m
+// windows: the time per invocation is the cost of m windows.
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WindowBenchmark {
+
+	@Param({"10", "100", "1000", "10000", "100000"})
+	public int wndSize;
+
+	@Param({"10000"})
+	public int m;
+
+	private Integer[] items;
+
+	@Setup
+	public void setup() {
+		Random random = new Random(42);
+		items = new Integer[wndSize + m];
+		for (int i=0; i<items.length; i++) {
+			items[i] = random.nextInt(2048);
+		}
+	}
+
+	// O(wndSize) per window
+	@Benchmark
+	public void maxNaive(Blackhole bh) {
+		Query<Integer,Integer> q = Q.sWindowNaive(wndSize, Integer.MIN_VALUE, Math::max);
+		Driver.run(items, q, new BlackholeSink<>(bh));
+	}
+
+	// amortized O(1) per window
+	@Benchmark
+	public void maxTwoStacks(Blackhole bh) {
+		Query<Integer,Integer> q = Q.sWindow(wndSize, Monoid.of(Integer.MIN_VALUE, Math::max));
+		Driver.run(items, q, new BlackholeSink<>(bh));
+	}
+
+	// sum: the two-stacks window against the one with inverse
+	@Benchmark
+	public void sumTwoStacks(Blackhole bh) {
+		Query<Integer,Integer> q = Q.sWindow(wndSize, Monoid.of(0, Integer::sum));
+		Driver.run(items, q, new BlackholeSink<>(bh));
+	}
+
+	@Benchmark
+	public void sumInv(Blackhole bh) {
+		Query<Integer,Integer> q = Q.sWindowInv(wndSize, 0, Integer::sum, (x, y) -> x - y);
+		Driver.run(items, q, new BlackholeSink<>(bh));
+	}
+
+}
@@ -81,6 +81,15 @@ public class Examples {
 		}
 		System.out.println();
 
+		System.out.println("***** map >> map (async) *****");
+		{
+			Query<Integer,Integer> q1 = Q.map(x -> 2*x);
+			Query<Integer,Integer> q2 = Q.map(x -> 2*x);
+			Query<Integer,Integer> q = Q.pipelineAsync(q1, q2, 4096);
+			Q.execute(Q.intStream(n), q, S.lastCount());
+		}
+		System.out.println();
+
 		System.out.println("***** filter >> map >> fold *****");
 		{
 			Query<Integer,Integer> q1 = Q.filter(x -> x % 2 == 0);
@@ -90,6 +99,36 @@ public class Examples {
 			Q.execute(Q.intStream(n), q, S.lastCount());
 		}
 		System.out.println();
+
+		System.out.println("***** filter >> map >> fold (optimized) *****");
+		{
+			Query<Integer,Integer> q1 = Q.filter(x -> x % 2 == 0);
+			Query<Integer,Integer> q2 = Q.map(x -> 2*x);
+			Query<Integer,Long> q3 = Q.fold(0L, (x, y) -> x + y);
+			Query<Integer,Long> q = Q.optimize(Q.pipeline(q1, q2, q3));
+			Q.execute(Q.intStream(n), q, S.lastCount());
+		}
+		System.out.println();
+
+		System.out.println("***** filter >> map >> fold (unboxed) *****");
+		{
+			IntQuery q1 = Q.intFilter(x -> x % 2 == 0);
+			IntQuery q2 = Q.intMap(x -> 2*x);
+			IntQuery q3 = Q.intFold(0, (x, y) -> x + y);
+			IntQuery q = Q.intPipeline(q1, q2, q3);
+			Q.execute(Q.intStream(n), q, S.intLastCount());
+		}
+		System.out.println();
+
+		System.out.println("***** filter >> map >> fold (unboxed, batch) *****");
+		{
+			IntQuery q1 = Q.intFilter(x -> x % 2 == 0);
+			IntQuery q2 = Q.intMap(x -> 2*x);
+			IntQuery q3 = Q.intFold(0, (x, y) -> x + y);
+			IntQuery q = Q.intPipeline(q1, q2, q3);
+			Q.executeBatch(Q.intStream(n), q, S.intLastCount(), 4096);
+		}
+		System.out.println();
 	}
 
 }
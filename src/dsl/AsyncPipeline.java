@@ -0,0 +1,132 @@
+package dsl;
+
+import java.util.concurrent.CancellationException;
+
+import utils.SpscRing;
+
+// Serial composition where the two stages run on different threads.
+//
+// q1 runs on the caller's thread and q2 runs on a worker thread that is
+// started by start(). They are connected by a bounded SPSC ring buffer,
+// so q1 blocks when q2 falls behind by more than 'capacity' items.
+// Nesting (as in Q.pipelineAsync with three stages) gives one thread
+// per stage.
+//
+// The downstream sink is called from the worker thread. end() waits for
+// the worker to finish, so the sink is complete when end() returns.
+// If q1 fails on the caller's thread (including in start()), the worker
+// is stopped (without ending q2) before the exception is rethrown. Intermediate items must
+// not be null.
+
+public class AsyncPipeline<A,B,C> implements Query<A,C> {
+
+	private final Query<A,B> q1;
+	private final Query<B,C> q2;
+	private final int capacity;
+	private SpscRing<B> ring;
+	private Thread worker;
+	private volatile Throwable error; // failure on the worker thread
+	private volatile boolean aborted; // failure on the caller's thread
+
+	private final Sink<B> intermediate = new Sink<B>() {
+		@Override
+		public void next(B item) {
+			try {
+				ring.put(item);
+			} catch (CancellationException e) {
+				throw new IllegalStateException("asynchronous stage failed", error);
+			}
+		}
+		@Override
+		public void end() {
+			// the ring is closed by AsyncPipeline.end()
+		}
+	};
+
+	public AsyncPipeline(Query<A,B> q1, Query<B,C> q2, int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("capacity should be >= 1");
+		}
+		this.q1 = q1;
+		this.q2 = q2;
+		this.capacity = capacity;
+	}
+
+	private void consume(SpscRing<B> ring, Sink<C> sink) {
+		try {
+			q2.start(sink);
+			B item;
+			while ((item = ring.take()) != null) {
+				if (aborted) {
+					return;
+				}
+				q2.next(item, sink);
+			}
+			if (!aborted) {
+				q2.end(sink);
+			}
+		} catch (Throwable t) {
+			error = t;
+			ring.cancel();
+		}
+	}
+
+	@Override
+	public void start(Sink<C> sink) {
+		SpscRing<B> r = new SpscRing<>(capacity);
+		ring = r;
+		error = null;
+		aborted = false;
+		worker = new Thread(() -> consume(r, sink), "dsl-async");
+		worker.setDaemon(true);
+		worker.start();
+		try {
+			q1.start(intermediate);
+		} catch (RuntimeException | Error e) {
+			abort();
+			throw e;
+		}
+	}
+
+	@Override
+	public void next(A item, Sink<C> sink) {
+		try {
+			q1.next(item, intermediate);
+		} catch (RuntimeException | Error e) {
+			abort();
+			throw e;
+		}
+	}
+
+	@Override
+	public void end(Sink<C> sink) {
+		try {
+			q1.end(intermediate);
+		} catch (RuntimeException | Error e) {
+			abort();
+			throw e;
+		}
+		ring.close();
+		join();
+		if (error != null) {
+			throw new IllegalStateException("asynchronous stage failed", error);
+		}
+	}
+
+	// Stops the worker after a failure on the caller's thread.
+	private void abort() {
+		aborted = true;
+		ring.close();
+		join();
+	}
+
+	private void join() {
+		try {
+			worker.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("interrupted while waiting for stage", e);
+		}
+	}
+
+}
@@ -0,0 +1,43 @@
+package dsl;
+
+// Adapter: view an DoubleQuery as a Query<Double,Double>.
+// Items are unboxed on the way in and boxed on the way out.
+
+public class BoxDouble implements Query<Double,Double> {
+
+	private final DoubleQuery q;
+	private Sink<Double> downstream;
+	private final DoubleSink boxing = new DoubleSink() {
+		@Override
+		public void next(double item) {
+			downstream.next(item);
+		}
+		@Override
+		public void end() {
+			downstream.end();
+		}
+	};
+
+	public BoxDouble(DoubleQuery q) {
+		this.q = q;
+	}
+
+	@Override
+	public void start(Sink<Double> sink) {
+		downstream = sink;
+		q.start(boxing);
+	}
+
+	@Override
+	public void next(Double item, Sink<Double> sink) {
+		downstream = sink;
+		q.next(item, boxing);
+	}
+
+	@Override
+	public void end(Sink<Double> sink) {
+		downstream = sink;
+		q.end(boxing);
+	}
+
+}
@@ -0,0 +1,43 @@
+package dsl;
+
+// Adapter: view an IntQuery as a Query<Integer,Integer>.
+// Items are unboxed on the way in and boxed on the way out.
+
+public class BoxInt implements Query<Integer,Integer> {
+
+	private final IntQuery q;
+	private Sink<Integer> downstream;
+	private final IntSink boxing = new IntSink() {
+		@Override
+		public void next(int item) {
+			downstream.next(item);
+		}
+		@Override
+		public void end() {
+			downstream.end();
+		}
+	};
+
+	public BoxInt(IntQuery q) {
+		this.q = q;
+	}
+
+	@Override
+	public void start(Sink<Integer> sink) {
+		downstream = sink;
+		q.start(boxing);
+	}
+
+	@Override
+	public void next(Integer item, Sink<Integer> sink) {
+		downstream = sink;
+		q.next(item, boxing);
+	}
+
+	@Override
+	public void end(Sink<Integer> sink) {
+		downstream = sink;
+		q.end(boxing);
+	}
+
+}
@@ -0,0 +1,43 @@
+package dsl;
+
+// Adapter: view an IntToDoubleQuery as a Query<Integer,Double>.
+// Items are unboxed on the way in and boxed on the way out.
+
+public class BoxIntToDouble implements Query<Integer,Double> {
+
+	private final IntToDoubleQuery q;
+	private Sink<Double> downstream;
+	private final DoubleSink boxing = new DoubleSink() {
+		@Override
+		public void next(double item) {
+			downstream.next(item);
+		}
+		@Override
+		public void end() {
+			downstream.end();
+		}
+	};
+
+	public BoxIntToDouble(IntToDoubleQuery q) {
+		this.q = q;
+	}
+
+	@Override
+	public void start(Sink<Double> sink) {
+		downstream = sink;
+		q.start(boxing);
+	}
+
+	@Override
+	public void next(Integer item, Sink<Double> sink) {
+		downstream = sink;
+		q.next(item, boxing);
+	}
+
+	@Override
+	public void end(Sink<Double> sink) {
+		downstream = sink;
+		q.end(boxing);
+	}
+
+}
@@ -0,0 +1,8 @@
+package dsl;
+
+// Implemented by operators that buffer items internally (e.g. Parallel
+// and Loop), so that instrumentation can track their buffer sizes.
+
+public interface Buffered {
+	int buffered(); // number of items currently buffered
+}
@@ -0,0 +1,49 @@
+package dsl;
+
+import java.util.function.DoublePredicate;
+
+// Filter out elements that falsify the given predicate (double version of Filter).
+
+public class DoubleFilter implements DoubleQuery {
+
+	private final DoublePredicate pred;
+	private double[] out = new double[0]; // output batch
+
+	public DoubleFilter(DoublePredicate pred) {
+		this.pred = pred;
+	}
+
+	@Override
+	public void start(DoubleSink sink) {
+		// nothing to do
+	}
+
+	@Override
+	public void next(double item, DoubleSink sink) {
+		if (pred.test(item)) {
+			sink.next(item);
+		}
+	}
+
+	@Override
+	public void nextBatch(double[] items, int len, DoubleSink sink) {
+		if (out.length < len) {
+			out = new double[len];
+		}
+		int m = 0;
+		for (int i=0; i<len; i++) {
+			double item = items[i];
+			if (pred.test(item)) {
+				out[m] = item;
+				m += 1;
+			}
+		}
+		sink.nextBatch(out, m);
+	}
+
+	@Override
+	public void end(DoubleSink sink) {
+		sink.end();
+	}
+	
+}
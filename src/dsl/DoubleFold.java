@@ -0,0 +1,43 @@
+package dsl;
+
+import java.util.function.DoubleBinaryOperator;
+
+// Aggregation (double version of Fold).
+
+public class DoubleFold implements DoubleQuery {
+
+	private final double init;
+	private final DoubleBinaryOperator op;
+	private double agg; // current aggregate
+
+	public DoubleFold(double init, DoubleBinaryOperator op) {
+		this.init = init;
+		this.op = op;
+	}
+
+	@Override
+	public void start(DoubleSink sink) {
+		this.agg = init;
+	}
+
+	@Override
+	public void next(double item, DoubleSink sink) {
+		agg = op.applyAsDouble(agg, item);
+	}
+
+	@Override
+	public void nextBatch(double[] items, int len, DoubleSink sink) {
+		double a = agg;
+		for (int i=0; i<len; i++) {
+			a = op.applyAsDouble(a, items[i]);
+		}
+		agg = a;
+	}
+
+	@Override
+	public void end(DoubleSink sink) {
+		sink.next(agg);
+		sink.end();
+	}
+	
+}
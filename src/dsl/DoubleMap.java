@@ -0,0 +1,42 @@
+package dsl;
+
+import java.util.function.DoubleUnaryOperator;
+
+// Apply a function elementwise (double version of Map).
+
+public class DoubleMap implements DoubleQuery {
+
+	private final DoubleUnaryOperator op;
+	private double[] out = new double[0]; // output batch
+
+	public DoubleMap(DoubleUnaryOperator op) {
+		this.op = op;
+	}
+
+	@Override
+	public void start(DoubleSink sink) {
+		// nothing to do
+	}
+
+	@Override
+	public void next(double item, DoubleSink sink) {
+		sink.next(op.applyAsDouble(item));
+	}
+
+	@Override
+	public void nextBatch(double[] items, int len, DoubleSink sink) {
+		if (out.length < len) {
+			out = new double[len];
+		}
+		for (int i=0; i<len; i++) {
+			out[i] = op.applyAsDouble(items[i]);
+		}
+		sink.nextBatch(out, len);
+	}
+
+	@Override
+	public void end(DoubleSink sink) {
+		sink.end();
+	}
+	
+}
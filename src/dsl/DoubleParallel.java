@@ -0,0 +1,112 @@
+package dsl;
+
+import java.util.function.DoubleBinaryOperator;
+
+import utils.DoubleRing;
+
+// Double version of Parallel: zip the outputs of two double queries.
+
+public class DoubleParallel implements DoubleQuery {
+
+	private final DoubleQuery q1;
+	private final DoubleQuery q2;
+	private final DoubleBinaryOperator op;
+	private final DoubleRing buffer1;
+	private boolean ended1;
+	private final DoubleRing buffer2;
+	private boolean ended2;
+	private DoubleSink downstream;
+
+	private final DoubleSink left = new DoubleSink() {
+		@Override
+		public void next(double item) {
+			if (buffer2.isEmpty()) {
+				buffer1.addLast(item);
+			} else {
+				downstream.next(op.applyAsDouble(item, buffer2.removeFirst()));
+			}
+		}
+		@Override
+		public void nextBatch(double[] items, int len) {
+			int i = 0;
+			for (; i<len && !buffer2.isEmpty(); i++) {
+				next(items[i]);
+			}
+			buffer1.addAll(items, i, len - i);
+		}
+		@Override
+		public void end() {
+			ended1 = true;
+			if (ended2) {
+				downstream.end();
+			}
+		}
+	};
+
+	private final DoubleSink right = new DoubleSink() {
+		@Override
+		public void next(double item) {
+			if (buffer1.isEmpty()) {
+				buffer2.addLast(item);
+			} else {
+				downstream.next(op.applyAsDouble(buffer1.removeFirst(), item));
+			}
+		}
+		@Override
+		public void nextBatch(double[] items, int len) {
+			int i = 0;
+			for (; i<len && !buffer1.isEmpty(); i++) {
+				next(items[i]);
+			}
+			buffer2.addAll(items, i, len - i);
+		}
+		@Override
+		public void end() {
+			ended2 = true;
+			if (ended1) {
+				downstream.end();
+			}
+		}
+	};
+
+	public DoubleParallel(DoubleQuery q1, DoubleQuery q2, DoubleBinaryOperator op) {
+		this.q1 = q1;
+		this.q2 = q2;
+		this.op = op;
+		this.buffer1 = new DoubleRing(16);
+		this.buffer2 = new DoubleRing(16);
+	}
+
+	@Override
+	public void start(DoubleSink sink) {
+		downstream = sink;
+		buffer1.clear();
+		buffer2.clear();
+		ended1 = false;
+		ended2 = false;
+		q1.start(left);
+		q2.start(right);
+	}
+
+	@Override
+	public void next(double item, DoubleSink sink) {
+		downstream = sink;
+		q1.next(item, left);
+		q2.next(item, right);
+	}
+
+	@Override
+	public void nextBatch(double[] items, int len, DoubleSink sink) {
+		downstream = sink;
+		q1.nextBatch(items, len, left);
+		q2.nextBatch(items, len, right);
+	}
+
+	@Override
+	public void end(DoubleSink sink) {
+		downstream = sink;
+		q1.end(left);
+		q2.end(right);
+	}
+
+}
@@ -0,0 +1,17 @@
+package dsl;
+
+// A query from double items to double items (no boxing).
+
+public interface DoubleQuery {
+	void start(DoubleSink sink);
+	void next(double item, DoubleSink sink);
+	void end(DoubleSink sink);
+
+	// Batch protocol: process items[0], ..., items[len-1].
+	// Operators that do not override it fall back to next().
+	default void nextBatch(double[] items, int len, DoubleSink sink) {
+		for (int i=0; i<len; i++) {
+			next(items[i], sink);
+		}
+	}
+}
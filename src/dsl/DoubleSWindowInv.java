@@ -0,0 +1,85 @@
+package dsl;
+
+import java.util.function.DoubleBinaryOperator;
+
+import utils.DoubleRing;
+
+// Double version of SWindowInv: sliding-window aggregation with an
+// inverse ('remove') operation, over an unboxed buffer.
+
+public class DoubleSWindowInv implements DoubleQuery {
+
+	private final double init;
+	private final DoubleBinaryOperator insert;
+	private final DoubleBinaryOperator remove;
+	private final int wndSize; // window size
+	private final DoubleRing buffer; // window items
+	private double agg; // current aggregate
+	private double[] out = new double[0]; // output batch
+
+	public DoubleSWindowInv
+	(int wndSize, double init, DoubleBinaryOperator insert,
+	 DoubleBinaryOperator remove)
+	{
+		if (wndSize < 1) {
+			throw new IllegalArgumentException("window size should be >= 1");
+		}
+		this.init = init;
+		this.insert = insert;
+		this.remove = remove;
+		this.wndSize = wndSize;
+		this.buffer = new DoubleRing(wndSize);
+		this.agg = init;
+	}
+
+	@Override
+	public void start(DoubleSink sink) {
+		this.agg = init;
+		buffer.clear();
+	}
+
+	@Override
+	public void next(double item, DoubleSink sink) {
+		if (buffer.size() == wndSize) {
+			agg = remove.applyAsDouble(agg, buffer.removeFirst());
+		}
+		buffer.addLast(item);
+		agg = insert.applyAsDouble(agg, item);
+		if (buffer.size() == wndSize) {
+			sink.next(agg);
+		}
+	}
+
+	@Override
+	public void nextBatch(double[] items, int len, DoubleSink sink) {
+		if (out.length < len) {
+			out = new double[len];
+		}
+		int m = 0;
+		int i = 0;
+		// fill the window
+		for (; i<len && buffer.size()<wndSize; i++) {
+			buffer.addLast(items[i]);
+			agg = insert.applyAsDouble(agg, items[i]);
+			if (buffer.size() == wndSize) {
+				out[m] = agg;
+				m += 1;
+			}
+		}
+		// slide the window
+		for (; i<len; i++) {
+			agg = remove.applyAsDouble(agg, buffer.removeFirst());
+			buffer.addLast(items[i]);
+			agg = insert.applyAsDouble(agg, items[i]);
+			out[m] = agg;
+			m += 1;
+		}
+		sink.nextBatch(out, m);
+	}
+
+	@Override
+	public void end(DoubleSink sink) {
+		sink.end();
+	}
+	
+}
@@ -0,0 +1,78 @@
+package dsl;
+
+import java.util.function.ToDoubleFunction;
+
+import utils.DoubleRing;
+
+// Double version of SWindowK: op is applied to a view of the last k
+// items, which reads the ring buffer of the window directly.
+
+public class DoubleSWindowK implements DoubleQuery {
+
+	private final int k; // window size
+	private final ToDoubleFunction<DoubleWindowView> op;
+	private final DoubleRing buffer; // window items
+	private double[] out = new double[0]; // output batch
+
+	private final DoubleWindowView view = new DoubleWindowView() {
+		@Override
+		public int size() {
+			return buffer.size();
+		}
+		@Override
+		public double get(int i) {
+			return buffer.get(i);
+		}
+	};
+
+	public DoubleSWindowK(int k, ToDoubleFunction<DoubleWindowView> op) {
+		if (k < 1) {
+			throw new IllegalArgumentException("window size should be >= 1");
+		}
+		this.k = k;
+		this.op = op;
+		this.buffer = new DoubleRing(k);
+	}
+
+	@Override
+	public void start(DoubleSink sink) {
+		buffer.clear();
+	}
+
+	// adds the item and returns true if the window is full
+	private boolean add(double item) {
+		if (buffer.size() == k) {
+			buffer.removeFirst();
+		}
+		buffer.addLast(item);
+		return buffer.size() == k;
+	}
+
+	@Override
+	public void next(double item, DoubleSink sink) {
+		if (add(item)) {
+			sink.next(op.applyAsDouble(view));
+		}
+	}
+
+	@Override
+	public void nextBatch(double[] items, int len, DoubleSink sink) {
+		if (out.length < len) {
+			out = new double[len];
+		}
+		int m = 0;
+		for (int i=0; i<len; i++) {
+			if (add(items[i])) {
+				out[m] = op.applyAsDouble(view);
+				m += 1;
+			}
+		}
+		sink.nextBatch(out, m);
+	}
+
+	@Override
+	public void end(DoubleSink sink) {
+		sink.end();
+	}
+
+}
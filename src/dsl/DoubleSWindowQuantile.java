@@ -0,0 +1,49 @@
+package dsl;
+
+// Double version of SWindowQuantile for a single quantile (e.g., a
+// running median), without any allocation per item.
+
+public class DoubleSWindowQuantile implements DoubleQuery {
+
+	private final double q;
+	private final QuantileWindow window;
+	private double[] out = new double[0]; // output batch
+
+	public DoubleSWindowQuantile(int wndSize, double q) {
+		this.q = QuantileWindow.check(new double[] { q })[0];
+		this.window = new QuantileWindow(wndSize);
+	}
+
+	@Override
+	public void start(DoubleSink sink) {
+		window.clear();
+	}
+
+	@Override
+	public void next(double item, DoubleSink sink) {
+		if (window.add(item)) {
+			sink.next(window.quantile(q));
+		}
+	}
+
+	@Override
+	public void nextBatch(double[] items, int len, DoubleSink sink) {
+		if (out.length < len) {
+			out = new double[len];
+		}
+		int m = 0;
+		for (int i=0; i<len; i++) {
+			if (window.add(items[i])) {
+				out[m] = window.quantile(q);
+				m += 1;
+			}
+		}
+		sink.nextBatch(out, m);
+	}
+
+	@Override
+	public void end(DoubleSink sink) {
+		sink.end();
+	}
+
+}
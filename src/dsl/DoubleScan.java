@@ -0,0 +1,49 @@
+package dsl;
+
+import java.util.function.DoubleBinaryOperator;
+
+// Running aggregation (double version of Scan).
+
+public class DoubleScan implements DoubleQuery {
+
+	private final double init;
+	private final DoubleBinaryOperator op;
+	private double agg; // current aggregate
+	private double[] out = new double[0]; // output batch
+
+	public DoubleScan(double init, DoubleBinaryOperator op) {
+		this.init = init;
+		this.op = op;
+	}
+
+	@Override
+	public void start(DoubleSink sink) {
+		this.agg = init;
+	}
+
+	@Override
+	public void next(double item, DoubleSink sink) {
+		agg = op.applyAsDouble(agg, item);
+		sink.next(agg);
+	}
+
+	@Override
+	public void nextBatch(double[] items, int len, DoubleSink sink) {
+		if (out.length < len) {
+			out = new double[len];
+		}
+		double a = agg;
+		for (int i=0; i<len; i++) {
+			a = op.applyAsDouble(a, items[i]);
+			out[i] = a;
+		}
+		agg = a;
+		sink.nextBatch(out, len);
+	}
+
+	@Override
+	public void end(DoubleSink sink) {
+		sink.end();
+	}
+	
+}
@@ -0,0 +1,16 @@
+package dsl;
+
+// A sink for unboxed double items.
+
+public interface DoubleSink {
+	void next(double item);
+	void end();
+
+	// Batch protocol: consume items[0], ..., items[len-1].
+	// The array is only valid for the duration of the call.
+	default void nextBatch(double[] items, int len) {
+		for (int i=0; i<len; i++) {
+			next(items[i]);
+		}
+	}
+}
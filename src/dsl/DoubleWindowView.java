@@ -0,0 +1,8 @@
+package dsl;
+
+// Double version of WindowView.
+
+public interface DoubleWindowView {
+	int size();
+	double get(int i);
+}
@@ -0,0 +1,191 @@
+package dsl;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+
+// Result of Q.measure: statistics over repeated runs of a query.
+//
+// Every measured run executes the query over a freshly opened source.
+// The warmup runs are executed in the same way but are not recorded.
+// Items, times and allocations are per run. Allocated bytes are those of
+// the calling thread (-1 if the JVM cannot report them), so work done by
+// the worker threads of asynchronous operators is not included.
+//
+// Nothing is printed: use toString() or the accessors.
+
+public class ExecutionStats {
+
+	public final int warmups;
+	public final int runs;
+	private final long[] itemsIn;
+	private final long[] itemsOut;
+	private final long[] nanos;
+	private final long[] allocated;
+	private final double[] sortedThroughput;
+
+	// One execution of the query. Returns the number of input items and
+	// adds the number of output items to out[0].
+	interface Run {
+		long run(long[] out);
+	}
+
+	private ExecutionStats(int warmups, int runs) {
+		this.warmups = warmups;
+		this.runs = runs;
+		this.itemsIn = new long[runs];
+		this.itemsOut = new long[runs];
+		this.nanos = new long[runs];
+		this.allocated = new long[runs];
+		this.sortedThroughput = new double[runs];
+	}
+
+	static ExecutionStats collect(int warmups, int runs, Run run) {
+		if (warmups < 0) {
+			throw new IllegalArgumentException("warmups should be >= 0");
+		}
+		if (runs < 1) {
+			throw new IllegalArgumentException("runs should be >= 1");
+		}
+		long[] out = new long[1];
+		for (int i=0; i<warmups; i++) {
+			run.run(out);
+		}
+
+		ExecutionStats stats = new ExecutionStats(warmups, runs);
+		for (int i=0; i<runs; i++) {
+			out[0] = 0;
+			long bytes0 = allocatedBytes();
+			long start = System.nanoTime();
+			long n = run.run(out);
+			long end = System.nanoTime();
+			long bytes1 = allocatedBytes();
+
+			stats.itemsIn[i] = n;
+			stats.itemsOut[i] = out[0];
+			stats.nanos[i] = Math.max(end - start, 1);
+			stats.allocated[i] = (bytes0 < 0 || bytes1 < 0) ? -1 : bytes1 - bytes0;
+			stats.sortedThroughput[i] = n * 1e9 / stats.nanos[i];
+		}
+		Arrays.sort(stats.sortedThroughput);
+		return stats;
+	}
+
+	// bytes allocated so far by the current thread, or -1
+	private static long allocatedBytes() {
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean sun = (com.sun.management.ThreadMXBean) bean;
+			if (sun.isThreadAllocatedMemorySupported() && sun.isThreadAllocatedMemoryEnabled()) {
+				return sun.getThreadAllocatedBytes(Thread.currentThread().getId());
+			}
+		}
+		return -1;
+	}
+
+	// input items of run i
+	public long itemsIn(int i) {
+		return itemsIn[i];
+	}
+
+	// output items of run i
+	public long itemsOut(int i) {
+		return itemsOut[i];
+	}
+
+	// wall-clock time of run i
+	public long nanos(int i) {
+		return nanos[i];
+	}
+
+	// input items per second of run i
+	public double throughput(int i) {
+		return itemsIn[i] * 1e9 / nanos[i];
+	}
+
+	// bytes allocated by the calling thread during run i (or -1)
+	public long allocatedBytes(int i) {
+		return allocated[i];
+	}
+
+	public long totalNanos() {
+		long sum = 0;
+		for (long t : nanos) {
+			sum += t;
+		}
+		return sum;
+	}
+
+	public double meanNanos() {
+		return totalNanos() / (double) runs;
+	}
+
+	// input items per second over all measured runs
+	public double meanThroughput() {
+		long n = 0;
+		for (long k : itemsIn) {
+			n += k;
+		}
+		return n * 1e9 / totalNanos();
+	}
+
+	public double minThroughput() {
+		return sortedThroughput[0];
+	}
+
+	public double maxThroughput() {
+		return sortedThroughput[runs - 1];
+	}
+
+	// p-th percentile (0 <= p <= 100) of the per-run throughputs,
+	// nearest-rank method
+	public double throughputPercentile(double p) {
+		if (p < 0 || p > 100) {
+			throw new IllegalArgumentException("percentile should be in [0,100]");
+		}
+		int rank = (int) Math.ceil(p / 100 * runs);
+		return sortedThroughput[Math.max(rank, 1) - 1];
+	}
+
+	public double medianThroughput() {
+		return throughputPercentile(50);
+	}
+
+	// average bytes allocated per run (or -1)
+	public double allocatedBytesPerRun() {
+		long sum = 0;
+		for (long b : allocated) {
+			if (b < 0) {
+				return -1;
+			}
+			sum += b;
+		}
+		return sum / (double) runs;
+	}
+
+	// average bytes allocated per input item (or -1)
+	public double allocatedBytesPerItem() {
+		double perRun = allocatedBytesPerRun();
+		if (perRun < 0) {
+			return -1;
+		}
+		long n = 0;
+		for (long k : itemsIn) {
+			n += k;
+		}
+		return n > 0 ? perRun * runs / n : 0.0;
+	}
+
+	@Override
+	public String toString() {
+		return String.format(
+			"%d runs (+%d warmup): in %,d  out %,d  %,.3f msec/run  " +
+			"throughput mean %,.0f  p50 %,.0f  p90 %,.0f  min %,.0f  max %,.0f tuples/sec  " +
+			"alloc %,.1f bytes/item",
+			runs, warmups, itemsIn[runs - 1], itemsOut[runs - 1], meanNanos() / 1e6,
+			meanThroughput(), throughputPercentile(50), throughputPercentile(90),
+			minThroughput(), maxThroughput(), allocatedBytesPerItem()
+		);
+	}
+
+}
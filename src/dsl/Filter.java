@@ -12,6 +12,10 @@ public class Filter<A> implements Query<A,A> {
 		this.pred = pred;
 	}
 
+	Predicate<A> pred() {
+		return pred;
+	}
+
 	@Override
 	public void start(Sink<A> sink) {
 		// nothing to do
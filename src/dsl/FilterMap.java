@@ -0,0 +1,44 @@
+package dsl;
+
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+// Filter out elements that falsify the predicate and apply a function
+// to the remaining ones. This is the fusion of Filter followed by Map.
+
+public class FilterMap<A,B> implements Query<A,B> {
+
+	private final Predicate<A> pred;
+	private final Function<A,B> op;
+
+	public FilterMap(Predicate<A> pred, Function<A,B> op) {
+		this.pred = pred;
+		this.op = op;
+	}
+
+	Predicate<A> pred() {
+		return pred;
+	}
+
+	Function<A,B> op() {
+		return op;
+	}
+
+	@Override
+	public void start(Sink<B> sink) {
+		// nothing to do
+	}
+
+	@Override
+	public void next(A item, Sink<B> sink) {
+		if (pred.test(item)) {
+			sink.next(op.apply(item));
+		}
+	}
+
+	@Override
+	public void end(Sink<B> sink) {
+		sink.end();
+	}
+	
+}
@@ -0,0 +1,91 @@
+package dsl;
+
+import java.util.function.Function;
+
+// Hopping window: aggregation over windows of wndSize items, one window
+// every 'slide' items (a tumbling window when slide == wndSize). For
+// example, at 360 samples per second, wndSize = 3600 and slide = 360
+// gives 10 s windows every 1 s.
+//
+// The stream is cut into panes of gcd(wndSize, slide) items. Each item
+// is combined into the aggregate of its pane once, and every window is
+// the combination of its wndSize / pane consecutive pane aggregates,
+// which are shared by all the windows that overlap (see TwoStacks).
+// Windows are only emitted when complete: if the stream ends in the
+// middle of a window, that window is dropped.
+
+public class HWindow<A,B> implements Query<A,B> {
+
+	private final int wndSize; // window size
+	private final int slide;
+	private final int paneSize;
+	private final Function<A,B> lift;
+	private final Monoid<B> monoid;
+	private final TwoStacks<B> panes; // the panes of the current window
+	private B pane; // aggregate of the current (incomplete) pane
+	private int paneCount; // number of items in the current pane
+	private long nPanes; // number of complete panes so far
+
+	public HWindow(int wndSize, int slide, Function<A,B> lift, Monoid<B> monoid) {
+		if (wndSize < 1) {
+			throw new IllegalArgumentException("window size should be >= 1");
+		}
+		if (slide < 1) {
+			throw new IllegalArgumentException("slide should be >= 1");
+		}
+		this.wndSize = wndSize;
+		this.slide = slide;
+		this.paneSize = gcd(wndSize, slide);
+		this.lift = lift;
+		this.monoid = monoid;
+		this.panes = new TwoStacks<>(wndSize / paneSize, monoid);
+		this.pane = monoid.identity();
+	}
+
+	private static int gcd(int x, int y) {
+		while (y != 0) {
+			int r = x % y;
+			x = y;
+			y = r;
+		}
+		return x;
+	}
+
+	@Override
+	public void start(Sink<B> sink) {
+		panes.clear();
+		pane = monoid.identity();
+		paneCount = 0;
+		nPanes = 0;
+	}
+
+	@Override
+	public void next(A item, Sink<B> sink) {
+		pane = monoid.combine(pane, lift.apply(item));
+		paneCount += 1;
+		if (paneCount < paneSize) {
+			return;
+		}
+
+		// the pane is complete
+		if (panes.size() == wndSize / paneSize) {
+			panes.pop();
+		}
+		panes.push(pane);
+		pane = monoid.identity();
+		paneCount = 0;
+		nPanes += 1;
+
+		// a window ends after wndSize, wndSize + slide, ... items
+		long n = nPanes * paneSize;
+		if (n >= wndSize && (n - wndSize) % slide == 0) {
+			sink.next(panes.query());
+		}
+	}
+
+	@Override
+	public void end(Sink<B> sink) {
+		sink.end();
+	}
+
+}
@@ -16,6 +16,10 @@ public class Ignore<A> implements Query<A,A> {
 		this.i = 0;
 	}
 
+	int n() {
+		return n;
+	}
+
 	@Override
 	public void start(Sink<A> sink) {
 		i = 0;
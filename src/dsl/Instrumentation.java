@@ -0,0 +1,55 @@
+package dsl;
+
+// Instrumentation of every node of a composed query (see Q.instrumentAll).
+
+@SuppressWarnings({"rawtypes", "unchecked"})
+class Instrumentation {
+
+	private Instrumentation() {
+		// nothing to do
+	}
+
+	static <A,B> Query<A,B> instrumentAll(String path, Query<A,B> q, Metrics metrics) {
+		return instrumentNode(path, q, metrics);
+	}
+
+	// The components of a composite query are instrumented as children
+	// of the composite, which subtracts their time from its own.
+	private static Instrumented instrumentNode(String path, Query q, Metrics metrics) {
+		Query inner;
+		Instrumented[] children;
+		if (q instanceof Pipeline) {
+			Pipeline p = (Pipeline) q;
+			children = new Instrumented[] {
+				instrumentNode(path + "/0", p.q1(), metrics),
+				instrumentNode(path + "/1", p.q2(), metrics)
+			};
+			inner = new Pipeline(children[0], children[1]);
+		} else if (q instanceof Parallel) {
+			Parallel p = (Parallel) q;
+			children = new Instrumented[] {
+				instrumentNode(path + "/0", p.q1(), metrics),
+				instrumentNode(path + "/1", p.q2(), metrics)
+			};
+			inner = new Parallel(children[0], children[1], p.op());
+		} else if (q instanceof Loop) {
+			children = new Instrumented[] {
+				instrumentNode(path + "/0", ((Loop) q).q(), metrics)
+			};
+			inner = new Loop(children[0]);
+		} else {
+			children = new Instrumented[0];
+			inner = q;
+		}
+		String kind = q.getClass().getSimpleName();
+		if (kind.isEmpty()) {
+			kind = "Query";
+		}
+		Instrumented node = new Instrumented<>(inner, metrics.get(path + " " + kind));
+		for (Instrumented child : children) {
+			child.setParent(node);
+		}
+		return node;
+	}
+
+}
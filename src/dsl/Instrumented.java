@@ -0,0 +1,105 @@
+package dsl;
+
+// Wrapper that records metrics for a query (see OperatorMetrics).
+//
+// Every input and output item is counted. One in every 2^k input items
+// is timed: the time of q.next() minus the time spent downstream of q,
+// so that the metrics of the operators in a pipeline do not include
+// each other. For composite queries (e.g. a Pipeline that is wrapped as
+// a whole) the time includes the time of their components, unless the
+// components are instrumented as its children (see Q.instrumentAll):
+// the children then time every call made while the parent times an
+// item and report it to the parent, which records only its self time.
+// The buffer size of Buffered queries is sampled at the same points.
+
+public class Instrumented<A,B> implements Query<A,B> {
+
+	private static final int SAMPLE_MASK = 63; // time 1 in 64 items
+
+	private final Query<A,B> q;
+	private final OperatorMetrics metrics;
+	private long count; // input items seen by this instance
+	private boolean timing; // the current item is timed
+	private long downstreamNanos; // time spent downstream (current item)
+	private long childNanos; // time spent in the children (current item)
+	private Instrumented<?,?> parent;
+	private Sink<B> downstream;
+
+	private final Sink<B> out = new Sink<B>() {
+		@Override
+		public void next(B item) {
+			metrics.addOut();
+			if (timing) {
+				long t0 = System.nanoTime();
+				downstream.next(item);
+				downstreamNanos += System.nanoTime() - t0;
+			} else {
+				downstream.next(item);
+			}
+		}
+		@Override
+		public void end() {
+			downstream.end();
+		}
+	};
+
+	public Instrumented(Query<A,B> q, OperatorMetrics metrics) {
+		this.q = q;
+		this.metrics = metrics;
+	}
+
+	Query<A,B> query() {
+		return q;
+	}
+
+	OperatorMetrics metrics() {
+		return metrics;
+	}
+
+	void setParent(Instrumented<?,?> parent) {
+		this.parent = parent;
+	}
+
+	@Override
+	public void start(Sink<B> sink) {
+		downstream = sink;
+		count = 0;
+		q.start(out);
+	}
+
+	@Override
+	public void next(A item, Sink<B> sink) {
+		downstream = sink;
+		metrics.addIn();
+		if ((count & SAMPLE_MASK) == 0 || (parent != null && parent.timing)) {
+			timing = true;
+			downstreamNanos = 0;
+			childNanos = 0;
+			long t0 = System.nanoTime();
+			q.next(item, out);
+			long t1 = System.nanoTime();
+			timing = false;
+			long nanos = t1 - t0 - downstreamNanos;
+			metrics.addSample(nanos - childNanos);
+			if (parent != null && parent.timing) {
+				parent.childNanos += nanos;
+			}
+			if (q instanceof Buffered) {
+				metrics.updateBuffered(((Buffered) q).buffered());
+			}
+		} else {
+			q.next(item, out);
+		}
+		count += 1;
+	}
+
+	@Override
+	public void end(Sink<B> sink) {
+		downstream = sink;
+		q.end(out);
+		if (q instanceof Buffered) {
+			metrics.updateBuffered(((Buffered) q).buffered());
+		}
+	}
+
+}
@@ -0,0 +1,16 @@
+package dsl;
+
+// A source of int items that hands out whole blocks, so that they can be
+// pushed to IntQuery.nextBatch() without being copied (see
+// Q.executeBatch).
+
+public interface IntBatchSource {
+
+	// Makes the next block available in batch() and returns its length,
+	// or 0 at the end. The previous block may be reused.
+	int nextBatch();
+
+	// The current block: batch()[0], ..., batch()[len-1].
+	int[] batch();
+
+}
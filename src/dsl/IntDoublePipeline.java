@@ -0,0 +1,56 @@
+package dsl;
+
+// Serial composition of an int-to-double query with a double query.
+
+public class IntDoublePipeline implements IntToDoubleQuery {
+
+	private final IntToDoubleQuery q1;
+	private final DoubleQuery q2;
+	private DoubleSink downstream;
+	private final DoubleSink intermediate = new DoubleSink() {
+		@Override
+		public void next(double item) {
+			q2.next(item, downstream);
+		}
+		@Override
+		public void nextBatch(double[] items, int len) {
+			q2.nextBatch(items, len, downstream);
+		}
+		@Override
+		public void end() {
+			// q2.end() is called by IntDoublePipeline.end()
+		}
+	};
+
+	public IntDoublePipeline(IntToDoubleQuery q1, DoubleQuery q2) {
+		this.q1 = q1;
+		this.q2 = q2;
+	}
+
+	@Override
+	public void start(DoubleSink sink) {
+		downstream = sink;
+		q2.start(sink);
+		q1.start(intermediate);
+	}
+
+	@Override
+	public void next(int item, DoubleSink sink) {
+		downstream = sink;
+		q1.next(item, intermediate);
+	}
+
+	@Override
+	public void nextBatch(int[] items, int len, DoubleSink sink) {
+		downstream = sink;
+		q1.nextBatch(items, len, intermediate);
+	}
+
+	@Override
+	public void end(DoubleSink sink) {
+		downstream = sink;
+		q1.end(intermediate);
+		q2.end(sink);
+	}
+
+}
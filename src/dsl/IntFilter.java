@@ -0,0 +1,49 @@
+package dsl;
+
+import java.util.function.IntPredicate;
+
+// Filter out elements that falsify the given predicate (int version of Filter).
+
+public class IntFilter implements IntQuery {
+
+	private final IntPredicate pred;
+	private int[] out = new int[0]; // output batch
+
+	public IntFilter(IntPredicate pred) {
+		this.pred = pred;
+	}
+
+	@Override
+	public void start(IntSink sink) {
+		// nothing to do
+	}
+
+	@Override
+	public void next(int item, IntSink sink) {
+		if (pred.test(item)) {
+			sink.next(item);
+		}
+	}
+
+	@Override
+	public void nextBatch(int[] items, int len, IntSink sink) {
+		if (out.length < len) {
+			out = new int[len];
+		}
+		int m = 0;
+		for (int i=0; i<len; i++) {
+			int item = items[i];
+			if (pred.test(item)) {
+				out[m] = item;
+				m += 1;
+			}
+		}
+		sink.nextBatch(out, m);
+	}
+
+	@Override
+	public void end(IntSink sink) {
+		sink.end();
+	}
+	
+}
@@ -0,0 +1,43 @@
+package dsl;
+
+import java.util.function.IntBinaryOperator;
+
+// Aggregation (int version of Fold).
+
+public class IntFold implements IntQuery {
+
+	private final int init;
+	private final IntBinaryOperator op;
+	private int agg; // current aggregate
+
+	public IntFold(int init, IntBinaryOperator op) {
+		this.init = init;
+		this.op = op;
+	}
+
+	@Override
+	public void start(IntSink sink) {
+		this.agg = init;
+	}
+
+	@Override
+	public void next(int item, IntSink sink) {
+		agg = op.applyAsInt(agg, item);
+	}
+
+	@Override
+	public void nextBatch(int[] items, int len, IntSink sink) {
+		int a = agg;
+		for (int i=0; i<len; i++) {
+			a = op.applyAsInt(a, items[i]);
+		}
+		agg = a;
+	}
+
+	@Override
+	public void end(IntSink sink) {
+		sink.next(agg);
+		sink.end();
+	}
+	
+}
@@ -0,0 +1,42 @@
+package dsl;
+
+import java.util.function.IntUnaryOperator;
+
+// Apply a function elementwise (int version of Map).
+
+public class IntMap implements IntQuery {
+
+	private final IntUnaryOperator op;
+	private int[] out = new int[0]; // output batch
+
+	public IntMap(IntUnaryOperator op) {
+		this.op = op;
+	}
+
+	@Override
+	public void start(IntSink sink) {
+		// nothing to do
+	}
+
+	@Override
+	public void next(int item, IntSink sink) {
+		sink.next(op.applyAsInt(item));
+	}
+
+	@Override
+	public void nextBatch(int[] items, int len, IntSink sink) {
+		if (out.length < len) {
+			out = new int[len];
+		}
+		for (int i=0; i<len; i++) {
+			out[i] = op.applyAsInt(items[i]);
+		}
+		sink.nextBatch(out, len);
+	}
+
+	@Override
+	public void end(IntSink sink) {
+		sink.end();
+	}
+	
+}
@@ -0,0 +1,112 @@
+package dsl;
+
+import java.util.function.IntBinaryOperator;
+
+import utils.IntRing;
+
+// Int version of Parallel: zip the outputs of two int queries.
+
+public class IntParallel implements IntQuery {
+
+	private final IntQuery q1;
+	private final IntQuery q2;
+	private final IntBinaryOperator op;
+	private final IntRing buffer1;
+	private boolean ended1;
+	private final IntRing buffer2;
+	private boolean ended2;
+	private IntSink downstream;
+
+	private final IntSink left = new IntSink() {
+		@Override
+		public void next(int item) {
+			if (buffer2.isEmpty()) {
+				buffer1.addLast(item);
+			} else {
+				downstream.next(op.applyAsInt(item, buffer2.removeFirst()));
+			}
+		}
+		@Override
+		public void nextBatch(int[] items, int len) {
+			int i = 0;
+			for (; i<len && !buffer2.isEmpty(); i++) {
+				next(items[i]);
+			}
+			buffer1.addAll(items, i, len - i);
+		}
+		@Override
+		public void end() {
+			ended1 = true;
+			if (ended2) {
+				downstream.end();
+			}
+		}
+	};
+
+	private final IntSink right = new IntSink() {
+		@Override
+		public void next(int item) {
+			if (buffer1.isEmpty()) {
+				buffer2.addLast(item);
+			} else {
+				downstream.next(op.applyAsInt(buffer1.removeFirst(), item));
+			}
+		}
+		@Override
+		public void nextBatch(int[] items, int len) {
+			int i = 0;
+			for (; i<len && !buffer1.isEmpty(); i++) {
+				next(items[i]);
+			}
+			buffer2.addAll(items, i, len - i);
+		}
+		@Override
+		public void end() {
+			ended2 = true;
+			if (ended1) {
+				downstream.end();
+			}
+		}
+	};
+
+	public IntParallel(IntQuery q1, IntQuery q2, IntBinaryOperator op) {
+		this.q1 = q1;
+		this.q2 = q2;
+		this.op = op;
+		this.buffer1 = new IntRing(16);
+		this.buffer2 = new IntRing(16);
+	}
+
+	@Override
+	public void start(IntSink sink) {
+		downstream = sink;
+		buffer1.clear();
+		buffer2.clear();
+		ended1 = false;
+		ended2 = false;
+		q1.start(left);
+		q2.start(right);
+	}
+
+	@Override
+	public void next(int item, IntSink sink) {
+		downstream = sink;
+		q1.next(item, left);
+		q2.next(item, right);
+	}
+
+	@Override
+	public void nextBatch(int[] items, int len, IntSink sink) {
+		downstream = sink;
+		q1.nextBatch(items, len, left);
+		q2.nextBatch(items, len, right);
+	}
+
+	@Override
+	public void end(IntSink sink) {
+		downstream = sink;
+		q1.end(left);
+		q2.end(right);
+	}
+
+}
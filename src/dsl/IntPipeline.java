@@ -0,0 +1,59 @@
+package dsl;
+
+// Serial composition of two int queries.
+//
+// The intermediate sink is created once and re-bound only when the
+// downstream sink changes, so no objects are allocated per item.
+
+public class IntPipeline implements IntQuery {
+
+	private final IntQuery q1;
+	private final IntQuery q2;
+	private IntSink downstream;
+	private final IntSink intermediate = new IntSink() {
+		@Override
+		public void next(int item) {
+			q2.next(item, downstream);
+		}
+		@Override
+		public void nextBatch(int[] items, int len) {
+			q2.nextBatch(items, len, downstream);
+		}
+		@Override
+		public void end() {
+			// q2.end() is called by IntPipeline.end()
+		}
+	};
+
+	public IntPipeline(IntQuery q1, IntQuery q2) {
+		this.q1 = q1;
+		this.q2 = q2;
+	}
+
+	@Override
+	public void start(IntSink sink) {
+		downstream = sink;
+		q2.start(sink);
+		q1.start(intermediate);
+	}
+
+	@Override
+	public void next(int item, IntSink sink) {
+		downstream = sink;
+		q1.next(item, intermediate);
+	}
+
+	@Override
+	public void nextBatch(int[] items, int len, IntSink sink) {
+		downstream = sink;
+		q1.nextBatch(items, len, intermediate);
+	}
+
+	@Override
+	public void end(IntSink sink) {
+		downstream = sink;
+		q1.end(intermediate);
+		q2.end(sink);
+	}
+
+}
@@ -0,0 +1,17 @@
+package dsl;
+
+// A query from int items to int items (no boxing).
+
+public interface IntQuery {
+	void start(IntSink sink);
+	void next(int item, IntSink sink);
+	void end(IntSink sink);
+
+	// Batch protocol: process items[0], ..., items[len-1].
+	// Operators that do not override it fall back to next().
+	default void nextBatch(int[] items, int len, IntSink sink) {
+		for (int i=0; i<len; i++) {
+			next(items[i], sink);
+		}
+	}
+}
@@ -0,0 +1,84 @@
+package dsl;
+
+import java.util.function.IntBinaryOperator;
+
+import utils.IntRing;
+
+// Int version of SWindowInv: sliding-window aggregation with an
+// inverse ('remove') operation, over an unboxed buffer.
+
+public class IntSWindowInv implements IntQuery {
+
+	private final int init;
+	private final IntBinaryOperator insert;
+	private final IntBinaryOperator remove;
+	private final int wndSize; // window size
+	private final IntRing buffer; // window items
+	private int agg; // current aggregate
+	private int[] out = new int[0]; // output batch
+
+	public IntSWindowInv
+	(int wndSize, int init, IntBinaryOperator insert, IntBinaryOperator remove)
+	{
+		if (wndSize < 1) {
+			throw new IllegalArgumentException("window size should be >= 1");
+		}
+		this.init = init;
+		this.insert = insert;
+		this.remove = remove;
+		this.wndSize = wndSize;
+		this.buffer = new IntRing(wndSize);
+		this.agg = init;
+	}
+
+	@Override
+	public void start(IntSink sink) {
+		this.agg = init;
+		buffer.clear();
+	}
+
+	@Override
+	public void next(int item, IntSink sink) {
+		if (buffer.size() == wndSize) {
+			agg = remove.applyAsInt(agg, buffer.removeFirst());
+		}
+		buffer.addLast(item);
+		agg = insert.applyAsInt(agg, item);
+		if (buffer.size() == wndSize) {
+			sink.next(agg);
+		}
+	}
+
+	@Override
+	public void nextBatch(int[] items, int len, IntSink sink) {
+		if (out.length < len) {
+			out = new int[len];
+		}
+		int m = 0;
+		int i = 0;
+		// fill the window
+		for (; i<len && buffer.size()<wndSize; i++) {
+			buffer.addLast(items[i]);
+			agg = insert.applyAsInt(agg, items[i]);
+			if (buffer.size() == wndSize) {
+				out[m] = agg;
+				m += 1;
+			}
+		}
+		// slide the window
+		for (; i<len; i++) {
+			agg = remove.applyAsInt(agg, buffer.removeFirst());
+			buffer.addLast(items[i]);
+			agg = insert.applyAsInt(agg, items[i]);
+			out[m] = agg;
+			m += 1;
+		}
+		sink.nextBatch(out, m);
+	}
+
+	@Override
+	public void end(IntSink sink) {
+		sink.end();
+	}
+	
+}
@@ -0,0 +1,78 @@
+package dsl;
+
+import java.util.function.ToIntFunction;
+
+import utils.IntRing;
+
+// Int version of SWindowK: op is applied to a view of the last k
+// items, which reads the ring buffer of the window directly.
+
+public class IntSWindowK implements IntQuery {
+
+	private final int k; // window size
+	private final ToIntFunction<IntWindowView> op;
+	private final IntRing buffer; // window items
+	private int[] out = new int[0]; // output batch
+
+	private final IntWindowView view = new IntWindowView() {
+		@Override
+		public int size() {
+			return buffer.size();
+		}
+		@Override
+		public int get(int i) {
+			return buffer.get(i);
+		}
+	};
+
+	public IntSWindowK(int k, ToIntFunction<IntWindowView> op) {
+		if (k < 1) {
+			throw new IllegalArgumentException("window size should be >= 1");
+		}
+		this.k = k;
+		this.op = op;
+		this.buffer = new IntRing(k);
+	}
+
+	@Override
+	public void start(IntSink sink) {
+		buffer.clear();
+	}
+
+	// adds the item and returns true if the window is full
+	private boolean add(int item) {
+		if (buffer.size() == k) {
+			buffer.removeFirst();
+		}
+		buffer.addLast(item);
+		return buffer.size() == k;
+	}
+
+	@Override
+	public void next(int item, IntSink sink) {
+		if (add(item)) {
+			sink.next(op.applyAsInt(view));
+		}
+	}
+
+	@Override
+	public void nextBatch(int[] items, int len, IntSink sink) {
+		if (out.length < len) {
+			out = new int[len];
+		}
+		int m = 0;
+		for (int i=0; i<len; i++) {
+			if (add(items[i])) {
+				out[m] = op.applyAsInt(view);
+				m += 1;
+			}
+		}
+		sink.nextBatch(out, m);
+	}
+
+	@Override
+	public void end(IntSink sink) {
+		sink.end();
+	}
+
+}
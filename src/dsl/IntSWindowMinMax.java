@@ -0,0 +1,92 @@
+package dsl;
+
+import utils.IntRing;
+import utils.LongRing;
+
+// Maximum (or minimum) over a sliding window of ints, with amortized
+// O(1) work per item and no allocation after construction.
+//
+// It keeps a monotonic deque of the window items that can still become
+// the maximum: an item is dropped as soon as a newer item is at least
+// as large. The deque lives in two rings (values and positions) of
+// window size.
+
+public class IntSWindowMinMax implements IntQuery {
+
+	private final int wndSize; // window size
+	private final boolean max; // maximum or minimum
+	private final IntRing values; // deque: values
+	private final LongRing positions; // deque: positions of the values
+	private long n; // number of items so far
+	private int[] out = new int[0]; // output batch
+
+	public IntSWindowMinMax(int wndSize, boolean max) {
+		if (wndSize < 1) {
+			throw new IllegalArgumentException("window size should be >= 1");
+		}
+		this.wndSize = wndSize;
+		this.max = max;
+		this.values = new IntRing(wndSize);
+		this.positions = new LongRing(wndSize);
+	}
+
+	@Override
+	public void start(IntSink sink) {
+		values.clear();
+		positions.clear();
+		n = 0;
+	}
+
+	// adds the item and returns true if the window is full
+	private boolean add(int item) {
+		// evict the front if it slides out of the window
+		if (!positions.isEmpty() && positions.first() <= n - wndSize) {
+			values.removeFirst();
+			positions.removeFirst();
+		}
+		// drop the items that are dominated by the new one
+		if (max) {
+			while (!values.isEmpty() && values.last() <= item) {
+				values.removeLast();
+				positions.removeLast();
+			}
+		} else {
+			while (!values.isEmpty() && values.last() >= item) {
+				values.removeLast();
+				positions.removeLast();
+			}
+		}
+		values.addLast(item);
+		positions.addLast(n);
+		n += 1;
+		return n >= wndSize;
+	}
+
+	@Override
+	public void next(int item, IntSink sink) {
+		if (add(item)) {
+			sink.next(values.first());
+		}
+	}
+
+	@Override
+	public void nextBatch(int[] items, int len, IntSink sink) {
+		if (out.length < len) {
+			out = new int[len];
+		}
+		int m = 0;
+		for (int i=0; i<len; i++) {
+			if (add(items[i])) {
+				out[m] = values.first();
+				m += 1;
+			}
+		}
+		sink.nextBatch(out, m);
+	}
+
+	@Override
+	public void end(IntSink sink) {
+		sink.end();
+	}
+
+}
@@ -0,0 +1,49 @@
+package dsl;
+
+import java.util.function.IntBinaryOperator;
+
+// Running aggregation (int version of Scan).
+
+public class IntScan implements IntQuery {
+
+	private final int init;
+	private final IntBinaryOperator op;
+	private int agg; // current aggregate
+	private int[] out = new int[0]; // output batch
+
+	public IntScan(int init, IntBinaryOperator op) {
+		this.init = init;
+		this.op = op;
+	}
+
+	@Override
+	public void start(IntSink sink) {
+		this.agg = init;
+	}
+
+	@Override
+	public void next(int item, IntSink sink) {
+		agg = op.applyAsInt(agg, item);
+		sink.next(agg);
+	}
+
+	@Override
+	public void nextBatch(int[] items, int len, IntSink sink) {
+		if (out.length < len) {
+			out = new int[len];
+		}
+		int a = agg;
+		for (int i=0; i<len; i++) {
+			a = op.applyAsInt(a, items[i]);
+			out[i] = a;
+		}
+		agg = a;
+		sink.nextBatch(out, len);
+	}
+
+	@Override
+	public void end(IntSink sink) {
+		sink.end();
+	}
+	
+}
@@ -0,0 +1,16 @@
+package dsl;
+
+// A sink for unboxed int items.
+
+public interface IntSink {
+	void next(int item);
+	void end();
+
+	// Batch protocol: consume items[0], ..., items[len-1].
+	// The array is only valid for the duration of the call.
+	default void nextBatch(int[] items, int len) {
+		for (int i=0; i<len; i++) {
+			next(items[i]);
+		}
+	}
+}
@@ -0,0 +1,42 @@
+package dsl;
+
+import java.util.function.IntToDoubleFunction;
+
+// Apply a function elementwise, from int items to double items.
+
+public class IntToDoubleMap implements IntToDoubleQuery {
+
+	private final IntToDoubleFunction op;
+	private double[] out = new double[0]; // output batch
+
+	public IntToDoubleMap(IntToDoubleFunction op) {
+		this.op = op;
+	}
+
+	@Override
+	public void start(DoubleSink sink) {
+		// nothing to do
+	}
+
+	@Override
+	public void next(int item, DoubleSink sink) {
+		sink.next(op.applyAsDouble(item));
+	}
+
+	@Override
+	public void nextBatch(int[] items, int len, DoubleSink sink) {
+		if (out.length < len) {
+			out = new double[len];
+		}
+		for (int i=0; i<len; i++) {
+			out[i] = op.applyAsDouble(items[i]);
+		}
+		sink.nextBatch(out, len);
+	}
+
+	@Override
+	public void end(DoubleSink sink) {
+		sink.end();
+	}
+	
+}
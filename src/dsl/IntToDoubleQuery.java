@@ -0,0 +1,17 @@
+package dsl;
+
+// A query from int items to double items (no boxing).
+
+public interface IntToDoubleQuery {
+	void start(DoubleSink sink);
+	void next(int item, DoubleSink sink);
+	void end(DoubleSink sink);
+
+	// Batch protocol: process items[0], ..., items[len-1].
+	// Operators that do not override it fall back to next().
+	default void nextBatch(int[] items, int len, DoubleSink sink) {
+		for (int i=0; i<len; i++) {
+			next(items[i], sink);
+		}
+	}
+}
@@ -0,0 +1,8 @@
+package dsl;
+
+// Int version of WindowView.
+
+public interface IntWindowView {
+	int size();
+	int get(int i);
+}
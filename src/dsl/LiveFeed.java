@@ -0,0 +1,74 @@
+package dsl;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+// A LiveSource that is fed by another thread (e.g., the reader of an
+// ECG device): push() adds an item stamped with its arrival time, and
+// close() ends the feed (both are called by the feeding thread). Only
+// one thread may poll.
+
+public class LiveFeed<A> implements LiveSource<A> {
+
+	private static final class Arrival<A> {
+		final A item;
+		final long nano;
+
+		Arrival(A item, long nano) {
+			this.item = item;
+			this.nano = nano;
+		}
+	}
+
+	private final ConcurrentLinkedQueue<Arrival<A>> queue = new ConcurrentLinkedQueue<>();
+	private volatile boolean closed;
+	private volatile Runnable ready;
+	private long lastArrival; // consumer
+
+	// Adds an item (not null) that arrives now.
+	public void push(A item) {
+		if (closed) {
+			throw new IllegalStateException("feed closed");
+		}
+		queue.add(new Arrival<>(item, System.nanoTime()));
+		signal();
+	}
+
+	// No more items will be pushed.
+	public void close() {
+		closed = true;
+		signal();
+	}
+
+	private void signal() {
+		Runnable r = ready;
+		if (r != null) {
+			r.run();
+		}
+	}
+
+	@Override
+	public A poll() {
+		Arrival<A> a = queue.poll();
+		if (a == null) {
+			return null;
+		}
+		lastArrival = a.nano;
+		return a.item;
+	}
+
+	@Override
+	public boolean isEnded() {
+		return closed && queue.isEmpty();
+	}
+
+	@Override
+	public long arrivalNano() {
+		return lastArrival;
+	}
+
+	@Override
+	public void setReady(Runnable ready) {
+		this.ready = ready;
+	}
+
+}
@@ -0,0 +1,28 @@
+package dsl;
+
+// A source whose items arrive over time (e.g., a 360 Hz ECG feed), for
+// StreamExecutor.
+//
+// poll() never blocks: it returns null when no item has arrived yet.
+// The source then calls the 'ready' callback (from any thread) once an
+// item has arrived or the source has ended, so that the stream can be
+// scheduled again instead of holding on to a thread. See LiveFeed.
+
+public interface LiveSource<A> {
+
+	// The next item, or null if there is none yet.
+	A poll();
+
+	// True once every item has been returned by poll() and no more
+	// items will arrive.
+	boolean isEnded();
+
+	// The arrival time (System.nanoTime()) of the item returned by the
+	// last poll().
+	long arrivalNano();
+
+	// Called once, before the first poll(). 'ready' must be run after
+	// every new item (once it is visible to poll()) and at the end.
+	void setReady(Runnable ready);
+
+}
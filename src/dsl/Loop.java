@@ -6,18 +6,38 @@ import utils.Or;
 
 // Feedback composition.
 
-public class Loop<A,B> implements Query<A,B> {
+public class Loop<A,B> implements Query<A,B>, Buffered {
 
 	private final Query<Or<A,B>,B> q;
 	private ArrayDeque<B> buffer;
 	private boolean ended;
+	private Sink<B> downstream; // the sink that 'isink' feeds
+	private Sink<B> isink;
 
 	public Loop(Query<Or<A,B>,B> q) {
 		this.q = q;
 		this.buffer = new ArrayDeque<>();
 	}
 
+	Query<Or<A,B>,B> q() {
+		return q;
+	}
+
+	@Override
+	public int buffered() {
+		return buffer.size();
+	}
+
+	// Re-bind the intermediate sink only when the downstream sink changes.
 	private Sink<B> intermediate(Sink<B> sink) {
+		if (sink != downstream) {
+			downstream = sink;
+			isink = bind(sink);
+		}
+		return isink;
+	}
+
+	private Sink<B> bind(Sink<B> sink) {
 		return new Sink<B>() {
 			@Override
 			public void next(B item) {
@@ -12,6 +12,10 @@ public class Map<A,B> implements Query<A,B> {
 		this.op = op;
 	}
 
+	Function<A,B> op() {
+		return op;
+	}
+
 	@Override
 	public void start(Sink<B> sink) {
 		// nothing to do
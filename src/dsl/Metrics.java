@@ -0,0 +1,65 @@
+package dsl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+// A registry of operator metrics, indexed by name (see Q.instrument).
+
+public class Metrics {
+
+	// the registry used when none is given explicitly
+	public static final Metrics DEFAULT = new Metrics();
+
+	private final ConcurrentHashMap<String,OperatorMetrics> map = new ConcurrentHashMap<>();
+	private final List<String> names = new ArrayList<>(); // in registration order
+
+	// The metrics with the given name (created on first use).
+	public OperatorMetrics get(String name) {
+		return map.computeIfAbsent(name, k -> {
+			synchronized (names) {
+				names.add(k);
+			}
+			return new OperatorMetrics(k);
+		});
+	}
+
+	public List<OperatorMetrics> all() {
+		List<OperatorMetrics> list = new ArrayList<>();
+		synchronized (names) {
+			for (String name : names) {
+				list.add(map.get(name));
+			}
+		}
+		return list;
+	}
+
+	// The metrics with the largest estimated total time. (With
+	// Q.instrumentAll the time of a composite excludes its components,
+	// so this is the most expensive stage.)
+	public OperatorMetrics slowest() {
+		OperatorMetrics slowest = null;
+		for (OperatorMetrics m : all()) {
+			if (slowest == null || m.totalNanos() > slowest.totalNanos()) {
+				slowest = m;
+			}
+		}
+		return slowest;
+	}
+
+	public void reset() {
+		for (OperatorMetrics m : all()) {
+			m.reset();
+		}
+	}
+
+	// One line per operator, in registration order.
+	public String report() {
+		StringBuilder sb = new StringBuilder();
+		for (OperatorMetrics m : all()) {
+			sb.append(m).append('\n');
+		}
+		return sb.toString();
+	}
+
+}
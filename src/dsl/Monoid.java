@@ -0,0 +1,27 @@
+package dsl;
+
+import java.util.function.BinaryOperator;
+
+// An associative operation with an identity element:
+//   combine(identity(), x) = combine(x, identity()) = x
+//   combine(combine(x, y), z) = combine(x, combine(y, z))
+// The operation need not be commutative or invertible
+// (e.g., max, min, gcd, argmax, concatenation).
+
+public interface Monoid<A> {
+	A identity();
+	A combine(A x, A y);
+
+	static <A> Monoid<A> of(A identity, BinaryOperator<A> op) {
+		return new Monoid<>() {
+			@Override
+			public A identity() {
+				return identity;
+			}
+			@Override
+			public A combine(A x, A y) {
+				return op.apply(x, y);
+			}
+		};
+	}
+}
@@ -0,0 +1,90 @@
+package dsl;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+// Counters for one instrumented operator (see Instrumented).
+//
+// Items in and out are counted exactly. Time is measured only for a
+// sample of the input items, and totals are extrapolated from it. The
+// counters are striped (LongAdder), so several threads can update the
+// same metrics (e.g. the shards of Q.partition) without contention.
+
+public class OperatorMetrics {
+
+	public final String name;
+	private final LongAdder itemsIn = new LongAdder();
+	private final LongAdder itemsOut = new LongAdder();
+	private final LongAdder sampledItems = new LongAdder();
+	private final LongAdder sampledNanos = new LongAdder();
+	private final LongAccumulator peakBuffered = new LongAccumulator(Math::max, 0);
+
+	OperatorMetrics(String name) {
+		this.name = name;
+	}
+
+	void addIn() {
+		itemsIn.increment();
+	}
+
+	void addOut() {
+		itemsOut.increment();
+	}
+
+	void addSample(long nanos) {
+		sampledItems.increment();
+		sampledNanos.add(nanos);
+	}
+
+	void updateBuffered(long size) {
+		peakBuffered.accumulate(size);
+	}
+
+	public long itemsIn() {
+		return itemsIn.sum();
+	}
+
+	public long itemsOut() {
+		return itemsOut.sum();
+	}
+
+	// output items per input item
+	public double selectivity() {
+		long in = itemsIn();
+		return in > 0 ? itemsOut() / (double) in : 0.0;
+	}
+
+	// average time spent in the operator per input item, excluding the
+	// time spent downstream
+	public double nanosPerItem() {
+		long n = sampledItems.sum();
+		return n > 0 ? sampledNanos.sum() / (double) n : 0.0;
+	}
+
+	// estimated total time spent in the operator (excluding downstream)
+	public double totalNanos() {
+		return nanosPerItem() * itemsIn();
+	}
+
+	public long peakBuffered() {
+		return peakBuffered.get();
+	}
+
+	void reset() {
+		itemsIn.reset();
+		itemsOut.reset();
+		sampledItems.reset();
+		sampledNanos.reset();
+		peakBuffered.reset();
+	}
+
+	@Override
+	public String toString() {
+		return String.format(
+			"%-40s in %,12d  out %,12d  sel %7.3f  %,10.1f ns/item  %,10.3f msec  buf %,d",
+			name, itemsIn(), itemsOut(), selectivity(), nanosPerItem(),
+			totalNanos() / 1e6, peakBuffered()
+		);
+	}
+
+}
@@ -0,0 +1,138 @@
+package dsl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import utils.functions.Func2;
+
+// Operator fusion for composed queries (see Q.optimize).
+//
+// A query is flattened into its chain of pipeline stages, and adjacent
+// stages are fused whenever the pair has one of the following shapes:
+//
+//   id >> q, q >> id, ignore(0)     ->  q
+//   map f >> map g                  ->  map (g . f)
+//   filter p >> filter r            ->  filter (p && r)
+//   filter p >> map f               ->  filterMap p f
+//   filterMap p f >> map g          ->  filterMap p (g . f)
+//   map f >> scan/fold op           ->  scan/fold (b, a) -> op(b, f(a))
+//   filter p >> fold op             ->  fold (b, a) -> p(a) ? op(b, a) : b
+//   filterMap p f >> fold op        ->  fold (b, a) -> p(a) ? op(b, f(a)) : b
+//   ignore n >> ignore m            ->  ignore (n + m)
+//
+// The stages of Parallel and Loop are optimized recursively. Stateful
+// operators (Scan, Fold, Ignore) are re-created from their parameters,
+// so the optimizer should be applied before the query is started.
+
+@SuppressWarnings({"rawtypes", "unchecked"})
+class Optimizer {
+
+	private Optimizer() {
+		// nothing to do
+	}
+
+	static <A,B> Query<A,B> optimize(Query<A,B> q) {
+		List<Query> stages = new ArrayList<>();
+		flatten(q, stages);
+
+		List<Query> fused = new ArrayList<>();
+		for (Query stage : stages) {
+			Query current = stage;
+			while (!fused.isEmpty()) {
+				Query merged = fuse(fused.get(fused.size() - 1), current);
+				if (merged == null) {
+					break;
+				}
+				fused.remove(fused.size() - 1);
+				current = merged;
+			}
+			if (!isIdentity(current)) {
+				fused.add(current);
+			}
+		}
+
+		if (fused.isEmpty()) {
+			return new Id();
+		}
+		Query result = fused.get(fused.size() - 1);
+		for (int i=fused.size()-2; i>=0; i--) {
+			result = new Pipeline(fused.get(i), result);
+		}
+		return result;
+	}
+
+	// Collect the stages of (nested) pipelines, optimizing the others.
+	private static void flatten(Query q, List<Query> stages) {
+		if (q instanceof Pipeline) {
+			Pipeline p = (Pipeline) q;
+			flatten(p.q1(), stages);
+			flatten(p.q2(), stages);
+		} else if (q instanceof Parallel) {
+			Parallel p = (Parallel) q;
+			stages.add(new Parallel(optimize(p.q1()), optimize(p.q2()), p.op()));
+		} else if (q instanceof Loop) {
+			stages.add(new Loop(optimize(((Loop) q).q())));
+		} else if (q instanceof Instrumented) {
+			Instrumented i = (Instrumented) q;
+			stages.add(new Instrumented(optimize(i.query()), i.metrics()));
+		} else {
+			stages.add(q);
+		}
+	}
+
+	private static boolean isIdentity(Query q) {
+		return q instanceof Id || (q instanceof Ignore && ((Ignore) q).n() == 0);
+	}
+
+	// The fusion of q1 >> q2, or null if the pair cannot be fused.
+	private static Query fuse(Query q1, Query q2) {
+		if (q1 instanceof Map) {
+			Function f = ((Map) q1).op();
+			if (q2 instanceof Map) {
+				return new Map(f.andThen(((Map) q2).op()));
+			}
+			if (q2 instanceof Scan) {
+				Scan s = (Scan) q2;
+				Func2 op = s.op();
+				return new Scan(s.init(), (b, a) -> op.apply(b, f.apply(a)));
+			}
+			if (q2 instanceof Fold) {
+				Fold s = (Fold) q2;
+				Func2 op = s.op();
+				return new Fold(s.init(), (b, a) -> op.apply(b, f.apply(a)));
+			}
+		} else if (q1 instanceof Filter) {
+			Predicate p = ((Filter) q1).pred();
+			if (q2 instanceof Filter) {
+				return new Filter(p.and(((Filter) q2).pred()));
+			}
+			if (q2 instanceof Map) {
+				return new FilterMap(p, ((Map) q2).op());
+			}
+			if (q2 instanceof Fold) {
+				Fold s = (Fold) q2;
+				Func2 op = s.op();
+				return new Fold(s.init(), (b, a) -> p.test(a) ? op.apply(b, a) : b);
+			}
+		} else if (q1 instanceof FilterMap) {
+			Predicate p = ((FilterMap) q1).pred();
+			Function f = ((FilterMap) q1).op();
+			if (q2 instanceof Map) {
+				return new FilterMap(p, f.andThen(((Map) q2).op()));
+			}
+			if (q2 instanceof Fold) {
+				Fold s = (Fold) q2;
+				Func2 op = s.op();
+				return new Fold(
+					s.init(), (b, a) -> p.test(a) ? op.apply(b, f.apply(a)) : b
+				);
+			}
+		} else if (q1 instanceof Ignore && q2 instanceof Ignore) {
+			return new Ignore(((Ignore) q1).n() + ((Ignore) q2).n());
+		}
+		return null;
+	}
+
+}
@@ -0,0 +1,182 @@
+package dsl;
+
+// Multiset of doubles with O(log n) (expected) insert, delete and
+// select (k-th smallest), used by the quantile windows.
+//
+// It is a treap stored in arrays: a binary search tree in which every
+// node also has a random priority, and every node has a higher priority
+// than its children, so the tree is balanced with high probability.
+// Every node stores the size of its subtree, for select. Equal values
+// are told apart by a sequence number (e.g., the position of the item
+// in the stream), so every element has a distinct key (value, seq).
+// The nodes are preallocated; no memory is allocated after construction.
+
+class OrderStatistics {
+
+	private static final int NIL = -1;
+
+	private final double[] values;
+	private final long[] seqs;
+	private final int[] prios;
+	private final int[] left;
+	private final int[] right;
+	private final int[] sizes;
+	private final int[] free; // stack of free nodes
+	private int nFree;
+	private int root;
+	private int seed;
+
+	// results of split
+	private int splitL;
+	private int splitR;
+
+	OrderStatistics(int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("capacity should be >= 1");
+		}
+		this.values = new double[capacity];
+		this.seqs = new long[capacity];
+		this.prios = new int[capacity];
+		this.left = new int[capacity];
+		this.right = new int[capacity];
+		this.sizes = new int[capacity];
+		this.free = new int[capacity];
+		this.seed = 0x2545F491;
+		clear();
+	}
+
+	int size() {
+		return root == NIL ? 0 : sizes[root];
+	}
+
+	void clear() {
+		root = NIL;
+		nFree = free.length;
+		for (int i=0; i<free.length; i++) {
+			free[i] = free.length - 1 - i;
+		}
+	}
+
+	void insert(double value, long seq) {
+		if (nFree == 0) {
+			throw new IllegalStateException("OrderStatistics is full");
+		}
+		nFree -= 1;
+		int node = free[nFree];
+		values[node] = value;
+		seqs[node] = seq;
+		prios[node] = nextPrio();
+		left[node] = NIL;
+		right[node] = NIL;
+		sizes[node] = 1;
+
+		split(root, value, seq);
+		int l = splitL;
+		int r = splitR;
+		root = merge(merge(l, node), r);
+	}
+
+	// Deletes the element (value, seq), if present.
+	void delete(double value, long seq) {
+		split(root, value, seq);
+		int l = splitL;
+		split(splitR, value, seq + 1);
+		int m = splitL;
+		int r = splitR;
+		if (m != NIL) { // m is the single node (value, seq)
+			free[nFree] = m;
+			nFree += 1;
+		}
+		root = merge(l, r);
+	}
+
+	// The k-th smallest value (k = 0, ..., size() - 1).
+	double select(int k) {
+		if (k < 0 || k >= size()) {
+			throw new IndexOutOfBoundsException(k);
+		}
+		int node = root;
+		while (true) {
+			int nLeft = size(left[node]);
+			if (k < nLeft) {
+				node = left[node];
+			} else if (k == nLeft) {
+				return values[node];
+			} else {
+				k -= nLeft + 1;
+				node = right[node];
+			}
+		}
+	}
+
+	// The q-quantile (0 <= q <= 1), with linear interpolation between
+	// the two closest ranks.
+	double quantile(double q) {
+		double pos = q * (size() - 1);
+		int lo = (int) Math.floor(pos);
+		double v = select(lo);
+		double frac = pos - lo;
+		if (frac == 0.0) {
+			return v;
+		}
+		return v + frac * (select(lo + 1) - v);
+	}
+
+	private int size(int node) {
+		return node == NIL ? 0 : sizes[node];
+	}
+
+	// compares (value, seq) with the key of the node
+	private int compare(double value, long seq, int node) {
+		int c = Double.compare(value, values[node]);
+		return c != 0 ? c : Long.compare(seq, seqs[node]);
+	}
+
+	// Splits t into the elements < (value, seq) (splitL)
+	// and the elements >= (value, seq) (splitR).
+	private void split(int t, double value, long seq) {
+		if (t == NIL) {
+			splitL = NIL;
+			splitR = NIL;
+		} else if (compare(value, seq, t) <= 0) {
+			// t and its right subtree are >= (value, seq)
+			split(left[t], value, seq);
+			left[t] = splitR;
+			sizes[t] = 1 + size(left[t]) + size(right[t]);
+			splitR = t;
+		} else {
+			split(right[t], value, seq);
+			right[t] = splitL;
+			sizes[t] = 1 + size(left[t]) + size(right[t]);
+			splitL = t;
+		}
+	}
+
+	// Merges two treaps, where all the elements of l are < those of r.
+	private int merge(int l, int r) {
+		if (l == NIL) {
+			return r;
+		}
+		if (r == NIL) {
+			return l;
+		}
+		if (prios[l] > prios[r]) {
+			right[l] = merge(right[l], r);
+			sizes[l] = 1 + size(left[l]) + size(right[l]);
+			return l;
+		} else {
+			left[r] = merge(l, left[r]);
+			sizes[r] = 1 + size(left[r]) + size(right[r]);
+			return r;
+		}
+	}
+
+	// xorshift
+	private int nextPrio() {
+		seed ^= seed << 13;
+		seed ^= seed >>> 17;
+		seed ^= seed << 5;
+		return seed;
+	}
+
+}
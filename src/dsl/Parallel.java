@@ -6,7 +6,7 @@ import utils.functions.Func2;
 
 // A variant of parallel composition, which is similar to 'zip'.
 
-public class Parallel<A, B, C, D> implements Query<A, D> {
+public class Parallel<A, B, C, D> implements Query<A, D>, Buffered {
 
 	private final Query<A,B> q1;
 	private final Query<A,C> q2;
@@ -15,6 +15,9 @@ public class Parallel<A, B, C, D> implements Query<A, D> {
 	private boolean ended1;
 	private ArrayDeque<C> buffer2;
 	private boolean ended2;
+	private Sink<D> downstream; // the sink that 'left' and 'right' feed
+	private Sink<B> left;
+	private Sink<C> right;
 
 	public Parallel(Query<A,B> q1, Query<A,C> q2, Func2<B,C,D> op) {
 		this.q1 = q1;
@@ -24,6 +27,23 @@ public class Parallel<A, B, C, D> implements Query<A, D> {
 		this.buffer2 = new ArrayDeque<>();
 	}
 
+	Query<A,B> q1() {
+		return q1;
+	}
+
+	Query<A,C> q2() {
+		return q2;
+	}
+
+	Func2<B,C,D> op() {
+		return op;
+	}
+
+	@Override
+	public int buffered() {
+		return buffer1.size() + buffer2.size();
+	}
+
 	private void process1(B b, Sink<D> sink) {
 		if (buffer2.isEmpty()) {
 			buffer1.add(b);
@@ -34,6 +54,15 @@ public class Parallel<A, B, C, D> implements Query<A, D> {
 		}
 	}
 
+	// Re-bind 'left' and 'right' only when the downstream sink changes.
+	private void bind(Sink<D> sink) {
+		if (sink != downstream) {
+			downstream = sink;
+			left = left(sink);
+			right = right(sink);
+		}
+	}
+
 	private Sink<B> left(Sink<D> sink) {
 		return new Sink<B>() {
 			@Override
@@ -82,20 +111,23 @@ public class Parallel<A, B, C, D> implements Query<A, D> {
 
 	@Override
 	public void start(Sink<D> sink) {
-		q1.start(left(sink));
-		q2.start(right(sink));
+		bind(sink);
+		q1.start(left);
+		q2.start(right);
 	}
 
 	@Override
 	public void next(A item, Sink<D> sink) {
-		q1.next(item, left(sink));
-		q2.next(item, right(sink));
+		bind(sink);
+		q1.next(item, left);
+		q2.next(item, right);
 	}
 
 	@Override
 	public void end(Sink<D> sink) {
-		q1.end(left(sink));
-		q2.end(right(sink));
+		bind(sink);
+		q1.end(left);
+		q2.end(right);
 	}
 	
 }
@@ -0,0 +1,242 @@
+package dsl;
+
+import java.util.ArrayDeque;
+
+import utils.SpscRing;
+import utils.functions.Func2;
+
+// Parallel composition where q1 and q2 run concurrently.
+//
+// Every input item is broadcast to two worker threads (one per branch)
+// through bounded SPSC ring buffers, and each worker sends its outputs
+// back through another bounded ring. The caller's thread zips the two
+// output streams exactly like Parallel does (the k-th output of q1 is
+// paired with the k-th output of q2), so the output is the same as
+// that of the sequential version, and the downstream sink is always
+// called from the caller's thread.
+//
+// The outputs waiting for their partner are kept in local buffers of
+// 'capacity' items. The caller stops taking the outputs of a branch
+// whose buffer is full, so a branch that runs ahead of the other one
+// is slowed down by the backpressure of its output ring. The only
+// exception is a branch that cannot catch up without more input (it
+// has processed every item sent to it and has no pending output):
+// then the buffer of the other branch grows, as in Parallel, since
+// blocking would deadlock.
+//
+// If the caller fails (op, the downstream sink, or a failed branch),
+// both workers are stopped before the exception is rethrown. Items must
+// not be null.
+
+public class ParallelAsync<A,B,C,D> implements Query<A,D>, Buffered {
+
+	private final Query<A,B> q1;
+	private final Query<A,C> q2;
+	private final Func2<B,C,D> op;
+	private final int capacity;
+	private Branch<B> branch1;
+	private Branch<C> branch2;
+	private final ArrayDeque<B> buffer1 = new ArrayDeque<>();
+	private final ArrayDeque<C> buffer2 = new ArrayDeque<>();
+
+	// One branch: an input ring, the worker thread running the branch's
+	// query, and an output ring.
+	private static class Branch<X> implements Sink<X> {
+		final SpscRing<Object> in;
+		final SpscRing<X> out;
+		final Thread worker;
+		long sent; // items sent to the branch (caller)
+		volatile long processed = -1; // items processed when the worker last waited for input
+		volatile boolean ended; // the branch called end() on its sink
+		volatile Throwable error;
+
+		<A> Branch(Query<A,X> q, int capacity, String name) {
+			this.in = new SpscRing<>(capacity);
+			this.out = new SpscRing<>(capacity);
+			this.worker = new Thread(() -> run(q), name);
+			this.worker.setDaemon(true);
+		}
+
+		@SuppressWarnings("unchecked")
+		private <A> void run(Query<A,X> q) {
+			try {
+				q.start(this);
+				long n = 0;
+				while (true) {
+					Object item = in.poll();
+					if (item == null) {
+						// about to wait for input (the outputs are
+						// already visible in 'out')
+						processed = n;
+						item = in.take();
+						if (item == null) {
+							break;
+						}
+					}
+					q.next((A) item, this);
+					n += 1;
+				}
+				q.end(this);
+			} catch (Throwable t) {
+				error = t;
+				in.cancel();
+			} finally {
+				out.close();
+			}
+		}
+
+		// The branch has processed every item sent to it, and all its
+		// outputs are visible in 'out' (read before polling 'out').
+		boolean idle() {
+			return processed == sent;
+		}
+
+		@Override
+		public void next(X item) {
+			out.put(item);
+		}
+
+		@Override
+		public void end() {
+			ended = true;
+		}
+	}
+
+	public ParallelAsync(Query<A,B> q1, Query<A,C> q2, Func2<B,C,D> op, int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("capacity should be >= 1");
+		}
+		this.q1 = q1;
+		this.q2 = q2;
+		this.op = op;
+		this.capacity = capacity;
+	}
+
+	@Override
+	public int buffered() {
+		return buffer1.size() + buffer2.size();
+	}
+
+	private void check() {
+		Throwable error = branch1.error != null ? branch1.error : branch2.error;
+		if (error != null) {
+			throw new IllegalStateException("parallel branch failed", error);
+		}
+	}
+
+	// Move the available outputs of both branches to the local buffers
+	// (up to 'capacity' items each, unless 'force') and emit all complete
+	// pairs.
+	private void drain(Sink<D> sink, boolean force) {
+		B b;
+		while ((force || buffer1.size() < capacity) && (b = branch1.out.poll()) != null) {
+			buffer1.add(b);
+		}
+		C c;
+		while ((force || buffer2.size() < capacity) && (c = branch2.out.poll()) != null) {
+			buffer2.add(c);
+		}
+		while (!buffer1.isEmpty() && !buffer2.isEmpty()) {
+			sink.next(op.apply(buffer1.remove(), buffer2.remove()));
+		}
+	}
+
+	private void send(Branch<?> branch, A item, Sink<D> sink) {
+		int idle = 0;
+		while (!branch.in.offer(item)) {
+			check();
+			boolean idle1 = branch1.idle();
+			boolean idle2 = branch2.idle();
+			drain(sink, false);
+			// a full buffer waits for a branch that needs more input
+			boolean stalled = (buffer1.size() >= capacity && buffer2.isEmpty() && idle2)
+				|| (buffer2.size() >= capacity && buffer1.isEmpty() && idle1);
+			if (stalled) {
+				drain(sink, true);
+			}
+			idle = SpscRing.idle(idle);
+		}
+		branch.sent += 1;
+	}
+
+	@Override
+	public void start(Sink<D> sink) {
+		buffer1.clear();
+		buffer2.clear();
+		branch1 = new Branch<>(q1, capacity, "dsl-parallel-1");
+		branch2 = new Branch<>(q2, capacity, "dsl-parallel-2");
+		branch1.worker.start();
+		branch2.worker.start();
+	}
+
+	@Override
+	public void next(A item, Sink<D> sink) {
+		try {
+			send(branch1, item, sink);
+			send(branch2, item, sink);
+			drain(sink, false);
+		} catch (RuntimeException | Error e) {
+			abort();
+			throw e;
+		}
+	}
+
+	@Override
+	public void end(Sink<D> sink) {
+		try {
+			branch1.in.close();
+			branch2.in.close();
+			int idle = 0;
+			while (!branch1.out.isDrained() || !branch2.out.isDrained()) {
+				boolean done1 = branch1.out.isDrained();
+				boolean done2 = branch2.out.isDrained();
+				drain(sink, false);
+				// outputs that will never have a partner are dropped (as
+				// in Parallel)
+				if (done2 && buffer2.isEmpty()) {
+					buffer1.clear();
+					while (branch1.out.poll() != null) {
+						// drop
+					}
+				}
+				if (done1 && buffer1.isEmpty()) {
+					buffer2.clear();
+					while (branch2.out.poll() != null) {
+						// drop
+					}
+				}
+				idle = SpscRing.idle(idle);
+			}
+			drain(sink, false);
+			join();
+			check();
+		} catch (RuntimeException | Error e) {
+			abort();
+			throw e;
+		}
+		if (branch1.ended && branch2.ended) {
+			sink.end();
+		}
+	}
+
+	// Stops both workers after a failure on the caller's thread: no more
+	// input, and a worker blocked on its full output ring is cancelled.
+	private void abort() {
+		branch1.in.close();
+		branch2.in.close();
+		branch1.out.cancel();
+		branch2.out.cancel();
+		join();
+	}
+
+	private void join() {
+		try {
+			branch1.worker.join();
+			branch2.worker.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("interrupted while waiting for branches", e);
+		}
+	}
+
+}
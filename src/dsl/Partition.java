@@ -0,0 +1,272 @@
+package dsl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import utils.SpscRing;
+
+// Key-partitioned data parallelism.
+//
+// Each input item is hashed by its key to one of nShards shards. Every
+// shard owns its own instance of the query (created by the supplier),
+// so all items with the same key are processed by the same instance,
+// in input order. Items are handed to the shards in batches, and the
+// batches of a shard are processed by tasks on a work-stealing pool
+// (one task at a time per shard, so the shard's query needs no
+// synchronization).
+//
+// The outputs of the shards are merged on the caller's thread, either
+// in the order in which they become available (unordered), or in input
+// order (ordered): outputs caused by earlier input items come first.
+// Outputs produced by start() come before everything else and outputs
+// produced by end() come after everything else, in shard order.
+// The downstream sink is ended once all shard queries have ended.
+//
+// If a shard's query fails on the pool, the shard skips its remaining
+// batches, and the failure is rethrown on the caller's thread (wrapped
+// in an IllegalStateException) by the next call that waits for or
+// merges shard outputs.
+
+public class Partition<A,K,B> implements Query<A,B> {
+
+	private static final int BATCH_SIZE = 256;
+	private static final int MAX_BATCHES_PER_SHARD = 4;
+
+	private final Function<A,K> keyFn;
+	private final int nShards;
+	private final Supplier<Query<A,B>> factory;
+	private final boolean ordered;
+	private final ForkJoinPool pool;
+	private final List<Shard<A,B>> shards = new ArrayList<>();
+	private Semaphore permits; // bounds the batches in flight
+	private final AtomicInteger inflight = new AtomicInteger();
+	private volatile Throwable error; // failure of a shard on the pool
+	private long seq; // sequence number of the next input item
+
+	private static class Batch<A> {
+		final Object[] items = new Object[BATCH_SIZE];
+		final long[] seqs = new long[BATCH_SIZE];
+		int len = 0;
+	}
+
+	private static class Tagged<B> {
+		final long seq; // sequence number of the input that caused it
+		final B item;
+		Tagged(long seq, B item) {
+			this.seq = seq;
+			this.item = item;
+		}
+	}
+
+	private static class Shard<A,B> implements Sink<B> {
+		final Query<A,B> q;
+		final ConcurrentLinkedQueue<Batch<A>> mailbox = new ConcurrentLinkedQueue<>();
+		final AtomicBoolean scheduled = new AtomicBoolean();
+		final ConcurrentLinkedQueue<Tagged<B>> outputs = new ConcurrentLinkedQueue<>();
+		volatile long processed = -1; // last input processed by the shard
+		long assigned = -1; // last input sent to the shard (caller only)
+		Batch<A> pending = new Batch<>(); // not yet sent (caller only)
+		long current; // input being processed
+		boolean ended;
+
+		Shard(Query<A,B> q) {
+			this.q = q;
+		}
+
+		@Override
+		public void next(B item) {
+			outputs.add(new Tagged<>(current, item));
+		}
+
+		@Override
+		public void end() {
+			ended = true;
+		}
+	}
+
+	public Partition(Function<A,K> keyFn, int nShards, Supplier<Query<A,B>> factory,
+					 boolean ordered, ForkJoinPool pool)
+	{
+		if (nShards < 1) {
+			throw new IllegalArgumentException("number of shards should be >= 1");
+		}
+		this.keyFn = keyFn;
+		this.nShards = nShards;
+		this.factory = factory;
+		this.ordered = ordered;
+		this.pool = pool;
+	}
+
+	public Partition(Function<A,K> keyFn, int nShards, Supplier<Query<A,B>> factory,
+					 boolean ordered)
+	{
+		this(keyFn, nShards, factory, ordered, ForkJoinPool.commonPool());
+	}
+
+	private int shardOf(A item) {
+		int h = keyFn.apply(item).hashCode();
+		h ^= (h >>> 16);
+		return Math.floorMod(h, nShards);
+	}
+
+	// Runs on the pool: process the batches of a shard, one at a time.
+	@SuppressWarnings("unchecked")
+	private void run(Shard<A,B> shard) {
+		Batch<A> batch;
+		while ((batch = shard.mailbox.poll()) != null) {
+			try {
+				if (error == null) {
+					for (int i=0; i<batch.len; i++) {
+						shard.current = batch.seqs[i];
+						shard.q.next((A) batch.items[i], shard);
+					}
+					shard.processed = batch.seqs[batch.len - 1];
+				}
+			} catch (Throwable t) {
+				if (error == null) {
+					error = t;
+				}
+			} finally {
+				permits.release();
+				inflight.decrementAndGet();
+			}
+		}
+		shard.scheduled.set(false);
+		if (!shard.mailbox.isEmpty() && shard.scheduled.compareAndSet(false, true)) {
+			pool.execute(() -> run(shard));
+		}
+	}
+
+	private void check() {
+		if (error != null) {
+			throw new IllegalStateException("partition shard failed", error);
+		}
+	}
+
+	private void dispatch(Shard<A,B> shard, Sink<B> sink) {
+		int idle = 0;
+		while (!permits.tryAcquire()) {
+			merge(sink, false);
+			idle = SpscRing.idle(idle);
+		}
+		inflight.incrementAndGet();
+		shard.mailbox.add(shard.pending);
+		shard.pending = new Batch<>();
+		if (shard.scheduled.compareAndSet(false, true)) {
+			pool.execute(() -> run(shard));
+		}
+	}
+
+	// Send the available shard outputs downstream. At the end of the
+	// stream (last = true) all outputs are available.
+	private void merge(Sink<B> sink, boolean last) {
+		check();
+		if (!ordered) {
+			for (Shard<A,B> shard : shards) {
+				Tagged<B> t;
+				while ((t = shard.outputs.poll()) != null) {
+					sink.next(t.item);
+				}
+			}
+			return;
+		}
+		while (true) {
+			// An output with sequence number s is safe to emit if no shard
+			// can still produce an output with a smaller sequence number.
+			long bound = Long.MAX_VALUE;
+			if (!last) {
+				for (Shard<A,B> shard : shards) {
+					long processed = shard.processed; // read before peeking
+					if (shard.outputs.isEmpty() && processed < shard.assigned) {
+						bound = Math.min(bound, processed);
+					}
+				}
+			}
+			Shard<A,B> min = null;
+			long minSeq = Long.MAX_VALUE;
+			for (Shard<A,B> shard : shards) {
+				Tagged<B> t = shard.outputs.peek();
+				if (t != null && (min == null || t.seq < minSeq)) {
+					min = shard;
+					minSeq = t.seq;
+				}
+			}
+			if (min == null || (!last && minSeq > bound)) {
+				return;
+			}
+			sink.next(min.outputs.poll().item);
+		}
+	}
+
+	@Override
+	public void start(Sink<B> sink) {
+		shards.clear();
+		permits = new Semaphore(MAX_BATCHES_PER_SHARD * nShards);
+		inflight.set(0);
+		error = null;
+		seq = 0;
+		for (int i=0; i<nShards; i++) {
+			Shard<A,B> shard = new Shard<>(factory.get());
+			shards.add(shard);
+			shard.current = -1;
+			shard.q.start(shard);
+		}
+	}
+
+	@Override
+	public void next(A item, Sink<B> sink) {
+		Shard<A,B> shard = shards.get(shardOf(item));
+		Batch<A> batch = shard.pending;
+		batch.items[batch.len] = item;
+		batch.seqs[batch.len] = seq;
+		batch.len += 1;
+		shard.assigned = seq;
+		seq += 1;
+		if (batch.len == BATCH_SIZE) {
+			dispatch(shard, sink);
+			merge(sink, false);
+		} else if (ordered && seq % (BATCH_SIZE * nShards) == 0) {
+			// Shards with rare keys would otherwise hold back the
+			// ordered merge (and its buffered outputs) for a long time.
+			for (Shard<A,B> s : shards) {
+				if (s.pending.len > 0) {
+					dispatch(s, sink);
+				}
+			}
+			merge(sink, false);
+		}
+	}
+
+	@Override
+	public void end(Sink<B> sink) {
+		for (Shard<A,B> shard : shards) {
+			if (shard.pending.len > 0) {
+				dispatch(shard, sink);
+			}
+		}
+		int idle = 0;
+		while (inflight.get() > 0) {
+			merge(sink, false);
+			idle = SpscRing.idle(idle);
+		}
+		check();
+		boolean ended = true;
+		for (Shard<A,B> shard : shards) {
+			shard.current = Long.MAX_VALUE;
+			shard.q.end(shard);
+			ended = ended && shard.ended;
+		}
+		merge(sink, true);
+		if (ended) {
+			sink.end();
+		}
+	}
+
+}
@@ -1,16 +1,39 @@
 package dsl;
 
+// Serial composition.
+//
+// The intermediate sink is built once per downstream sink (normally
+// once, in start) and reused for every item.
+
 public class Pipeline<A,B,C> implements Query<A,C> {
 
     private final Query<A,B> q1;
     private final Query<B,C> q2;
+    private Sink<C> downstream;
+    private Sink<B> intermediate;
 
     public Pipeline(Query<A,B> q1, Query<B,C> q2) {
         this.q1 = q1;
         this.q2 = q2;
     }
 
+    Query<A,B> q1() {
+        return q1;
+    }
+
+    Query<B,C> q2() {
+        return q2;
+    }
+
     private Sink<B> intermediate(Sink<C> sink) {
+        if (sink != downstream) {
+            downstream = sink;
+            intermediate = bind(sink);
+        }
+        return intermediate;
+    }
+
+    private Sink<B> bind(Sink<C> sink) {
         return new Sink<B>() {
             @Override public void next(B item) { q2.next(item, sink); }
             @Override public void end()        {//q2.end(sink);  
@@ -3,9 +3,21 @@ package dsl;
 import java.text.DecimalFormat;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
 import java.util.function.BinaryOperator;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoublePredicate;
+import java.util.function.DoubleUnaryOperator;
 import java.util.function.Function;
+import java.util.function.IntBinaryOperator;
+import java.util.function.IntPredicate;
+import java.util.function.IntToDoubleFunction;
+import java.util.function.IntUnaryOperator;
 import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
 
 import utils.Or;
 import utils.functions.Func2;
@@ -110,6 +122,152 @@ public class Q {
 		return new SWindowInv<>(wndSize, init, insert, remove);
 	}
 
+	// Sliding window for any monoid, without inverse (e.g., max).
+	public static <A> Query<A,A> sWindow(int wndSize, Monoid<A> monoid) {
+		return new SWindow<>(wndSize, Function.identity(), monoid);
+	}
+
+	public static <A,B> Query<A,B>
+	sWindow(int wndSize, Function<A,B> lift, Monoid<B> monoid)
+	{
+		return new SWindow<>(wndSize, lift, monoid);
+	}
+
+	// Hopping windows: one window of wndSize items every slide items.
+
+	public static <A> Query<A,A>
+	hWindow(int wndSize, int slide, Monoid<A> monoid)
+	{
+		return new HWindow<>(wndSize, slide, Function.identity(), monoid);
+	}
+
+	public static <A,B> Query<A,B>
+	hWindow(int wndSize, int slide, Function<A,B> lift, Monoid<B> monoid)
+	{
+		return new HWindow<>(wndSize, slide, lift, monoid);
+	}
+
+	// Tumbling windows: consecutive, non-overlapping windows.
+
+	public static <A> Query<A,A> tWindow(int wndSize, Monoid<A> monoid) {
+		return hWindow(wndSize, wndSize, monoid);
+	}
+
+	public static <A,B> Query<A,B>
+	tWindow(int wndSize, Function<A,B> lift, Monoid<B> monoid)
+	{
+		return hWindow(wndSize, wndSize, lift, monoid);
+	}
+
+	// Event-time windows: the window duration is in the unit of the
+	// timestamps, which are read from the items (e.g. VTL.ts). Items
+	// may be out of order by up to maxDelay; later items are dropped.
+
+	public static <A,B> Query<A,B>
+	sWindowTime(long duration, ToLongFunction<A> ts, Function<A,B> lift,
+				Monoid<B> monoid, long maxDelay)
+	{
+		return new SWindowTime<>(duration, ts, lift, monoid, maxDelay);
+	}
+
+	public static <A,B> Query<A,B>
+	sWindowTime(long duration, ToLongFunction<A> ts, Function<A,B> lift,
+				Monoid<B> monoid)
+	{
+		return sWindowTime(duration, ts, lift, monoid, 0);
+	}
+
+	public static <A,B> Query<A,B>
+	tWindowTime(long duration, ToLongFunction<A> ts, Function<A,B> lift,
+				Monoid<B> monoid, long maxDelay)
+	{
+		return new TWindowTime<>(duration, ts, lift, monoid, maxDelay);
+	}
+
+	public static <A,B> Query<A,B>
+	tWindowTime(long duration, ToLongFunction<A> ts, Function<A,B> lift,
+				Monoid<B> monoid)
+	{
+		return tWindowTime(duration, ts, lift, monoid, 0);
+	}
+
+	// Count, mean, standard deviation, min and max over one sliding
+	// window (aggregates: the flags of SWindowStats). Every window is
+	// emitted in the same, reused WindowStats.
+
+	public static <A> Query<A,WindowStats>
+	sWindowStats(int wndSize, ToDoubleFunction<A> value, int aggregates)
+	{
+		return new SWindowStats<>(wndSize, value, aggregates);
+	}
+
+	public static <A> Query<A,WindowStats>
+	sWindowStats(int wndSize, ToDoubleFunction<A> value)
+	{
+		return sWindowStats(wndSize, value, SWindowStats.ALL);
+	}
+
+	// Sliding-window quantiles (e.g. 0.5 for the median), with linear
+	// interpolation: one array of quantiles per window.
+
+	public static Query<Double,double[]>
+	sWindowQuantile(int wndSize, double... qs)
+	{
+		return new SWindowQuantile<Double>(wndSize, x -> x, qs);
+	}
+
+	public static <A> Query<A,double[]>
+	sWindowQuantile(int wndSize, ToDoubleFunction<A> value, double... qs)
+	{
+		return new SWindowQuantile<>(wndSize, value, qs);
+	}
+
+	// Sliding-window maximum, minimum and argmax (monotonic deque).
+
+	public static IntQuery sWindowMax(int wndSize) {
+		return new IntSWindowMinMax(wndSize, true);
+	}
+
+	public static IntQuery sWindowMin(int wndSize) {
+		return new IntSWindowMinMax(wndSize, false);
+	}
+
+	public static <A> Query<A,A>
+	sWindowArgMax(int wndSize, ToDoubleFunction<A> key)
+	{
+		return new SWindowArgMax<>(wndSize, key);
+	}
+
+	// Sliding window of size k: op reads the last k items through a view.
+	public static <A,B> Query<A,B>
+	sWindowK(int k, Function<WindowView<A>,B> op)
+	{
+		return new SWindowK<>(k, op);
+	}
+
+	// Session windows: op is applied to every segment of the stream. A
+	// segment ends before an item for which the boundary holds, or
+	// before a gap of more than maxGap between consecutive timestamps.
+
+	public static <A,B> Query<A,B>
+	sessionWindow(Predicate<A> boundary, Function<WindowView<A>,B> op)
+	{
+		return new SessionWindow<>(boundary, null, 0, Integer.MAX_VALUE, op);
+	}
+
+	public static <A,B> Query<A,B>
+	sessionWindow(ToLongFunction<A> ts, long maxGap, Function<WindowView<A>,B> op)
+	{
+		return new SessionWindow<>(null, ts, maxGap, Integer.MAX_VALUE, op);
+	}
+
+	public static <A,B> Query<A,B>
+	sessionWindow(Predicate<A> boundary, ToLongFunction<A> ts, long maxGap,
+				  int maxLength, Function<WindowView<A>,B> op)
+	{
+		return new SessionWindow<>(boundary, ts, maxGap, maxLength, op);
+	}
+
 	public static <A,B> Query<A,B> sWindow2(Func2<A,A,B> op) {
 		return new SWindow2<>(op);
 	}
@@ -124,6 +282,28 @@ public class Q {
 		return new Parallel<>(q1, q2, op);
 	}
 
+	public static <A,B,C,D> Query<A,D>
+	parallelAsync(Query<A,B> q1, Query<A,C> q2, Func2<B,C,D> op, int capacity)
+	{
+		return new ParallelAsync<>(q1, q2, op, capacity);
+	}
+
+	// Data parallelism: items are hashed by key to one of nShards
+	// instances of the query, which run on the common fork/join pool.
+	// The shard outputs are merged in arbitrary order.
+	public static <A,K,B> Query<A,B>
+	partition(Function<A,K> keyFn, int nShards, Supplier<Query<A,B>> factory)
+	{
+		return new Partition<>(keyFn, nShards, factory, false);
+	}
+
+	// Same as partition, but the shard outputs are merged in input order.
+	public static <A,K,B> Query<A,B>
+	partitionOrdered(Function<A,K> keyFn, int nShards, Supplier<Query<A,B>> factory)
+	{
+		return new Partition<>(keyFn, nShards, factory, true);
+	}
+
 	public static <A,B,C> Query<A,C>
 	pipeline(Query<A,B> q1, Query<B,C> q2)
 	{
@@ -156,22 +336,198 @@ public class Q {
 		return pipeline(q1, pipeline(q2, q3, q4, q5, q6));
 	}
 
+	public static <A,B,C> Query<A,C>
+	pipelineAsync(Query<A,B> q1, Query<B,C> q2, int capacity)
+	{
+		return new AsyncPipeline<>(q1, q2, capacity);
+	}
+
+	public static <A,B,C,D> Query<A,D>
+	pipelineAsync(Query<A,B> q1, Query<B,C> q2, Query<C,D> q3, int capacity)
+	{
+		return pipelineAsync(q1, pipelineAsync(q2, q3, capacity), capacity);
+	}
+
 	public static <A,B> Query<A,B> loop(Query<Or<A,B>,B> q) {
 		return new Loop<>(q);
 	}
 
-	public static Iterator<Integer> intStream(int n) {
+	public static <A,B> Query<A,B> instrument(String name, Query<A,B> q) {
+		return instrument(name, q, Metrics.DEFAULT);
+	}
+
+	public static <A,B> Query<A,B>
+	instrument(String name, Query<A,B> q, Metrics metrics)
+	{
+		return new Instrumented<>(q, metrics.get(name));
+	}
+
+	// Instrument every node of a composed query. The metrics of a node
+	// are named after its path from the root, e.g. "qPeaks/1/0 Map".
+	// The time of a composite node (Pipeline, Parallel, Loop) is its
+	// self time, without the time of its components.
+	public static <A,B> Query<A,B>
+	instrumentAll(String name, Query<A,B> q, Metrics metrics)
+	{
+		return Instrumentation.instrumentAll(name, q, metrics);
+	}
+
+	// Rewrite a composed query by fusing adjacent operators
+	// (see Optimizer for the supported shapes).
+	public static <A,B> Query<A,B> optimize(Query<A,B> q) {
+		return Optimizer.optimize(q);
+	}
+
+	public static <A,B> Query<A,B> filterMap(Predicate<A> pred, Function<A,B> op) {
+		return new FilterMap<>(pred, op);
+	}
+
+	// Primitive (unboxed) queries over int and double items.
+
+	public static IntQuery intMap(IntUnaryOperator op) {
+		return new IntMap(op);
+	}
+
+	public static IntQuery intFilter(IntPredicate pred) {
+		return new IntFilter(pred);
+	}
+
+	public static IntQuery intScan(int init, IntBinaryOperator op) {
+		return new IntScan(init, op);
+	}
+
+	public static IntQuery intFold(int init, IntBinaryOperator op) {
+		return new IntFold(init, op);
+	}
+
+	public static IntQuery
+	intSWindowInv(int wndSize, int init, IntBinaryOperator insert,
+				  IntBinaryOperator remove)
+	{
+		return new IntSWindowInv(wndSize, init, insert, remove);
+	}
+
+	public static IntQuery
+	intParallel(IntQuery q1, IntQuery q2, IntBinaryOperator op)
+	{
+		return new IntParallel(q1, q2, op);
+	}
+
+	public static IntQuery intPipeline(IntQuery q1, IntQuery q2) {
+		return new IntPipeline(q1, q2);
+	}
+
+	public static IntQuery intPipeline(IntQuery q1, IntQuery q2, IntQuery q3) {
+		return intPipeline(q1, intPipeline(q2, q3));
+	}
+
+	public static DoubleQuery doubleMap(DoubleUnaryOperator op) {
+		return new DoubleMap(op);
+	}
+
+	public static DoubleQuery doubleFilter(DoublePredicate pred) {
+		return new DoubleFilter(pred);
+	}
+
+	public static DoubleQuery doubleScan(double init, DoubleBinaryOperator op) {
+		return new DoubleScan(init, op);
+	}
+
+	public static DoubleQuery doubleFold(double init, DoubleBinaryOperator op) {
+		return new DoubleFold(init, op);
+	}
+
+	public static DoubleQuery
+	doubleSWindowInv(int wndSize, double init, DoubleBinaryOperator insert,
+					 DoubleBinaryOperator remove)
+	{
+		return new DoubleSWindowInv(wndSize, init, insert, remove);
+	}
+
+	public static DoubleQuery
+	doubleParallel(DoubleQuery q1, DoubleQuery q2, DoubleBinaryOperator op)
+	{
+		return new DoubleParallel(q1, q2, op);
+	}
+
+	public static DoubleQuery doublePipeline(DoubleQuery q1, DoubleQuery q2) {
+		return new DoublePipeline(q1, q2);
+	}
+
+	public static DoubleQuery
+	doublePipeline(DoubleQuery q1, DoubleQuery q2, DoubleQuery q3)
+	{
+		return doublePipeline(q1, doublePipeline(q2, q3));
+	}
+
+	public static IntToDoubleQuery intToDoubleMap(IntToDoubleFunction op) {
+		return new IntToDoubleMap(op);
+	}
+
+	public static IntToDoubleQuery
+	intDoublePipeline(IntToDoubleQuery q1, DoubleQuery q2)
+	{
+		return new IntDoublePipeline(q1, q2);
+	}
+
+	public static IntQuery intSWindowK(int k, ToIntFunction<IntWindowView> op) {
+		return new IntSWindowK(k, op);
+	}
+
+	public static DoubleQuery
+	doubleSWindowK(int k, ToDoubleFunction<DoubleWindowView> op)
+	{
+		return new DoubleSWindowK(k, op);
+	}
+
+	public static DoubleQuery doubleSWindowQuantile(int wndSize, double q) {
+		return new DoubleSWindowQuantile(wndSize, q);
+	}
+
+	public static DoubleQuery doubleSWindowMedian(int wndSize) {
+		return doubleSWindowQuantile(wndSize, 0.5);
+	}
+
+	// Adapters between the primitive and the generic queries.
+
+	public static Query<Integer,Integer> boxed(IntQuery q) {
+		return new BoxInt(q);
+	}
+
+	public static Query<Double,Double> boxed(DoubleQuery q) {
+		return new BoxDouble(q);
+	}
+
+	public static Query<Integer,Double> boxed(IntToDoubleQuery q) {
+		return new BoxIntToDouble(q);
+	}
+
+	public static IntQuery unboxedInt(Query<Integer,Integer> q) {
+		return new UnboxInt(q);
+	}
+
+	public static DoubleQuery unboxedDouble(Query<Double,Double> q) {
+		return new UnboxDouble(q);
+	}
+
+	public static IntToDoubleQuery unboxedIntToDouble(Query<Integer,Double> q) {
+		return new UnboxIntToDouble(q);
+	}
+
+	// The stream 1, 2, ..., n. It can be consumed either as an
+	// Iterator<Integer> or, without boxing, through nextInt().
+	public static PrimitiveIterator.OfInt intStream(int n) {
 		if (n < 0) {
 			throw new IllegalArgumentException("n must be >= 0");
 		}
-		return new Iterator<Integer>() {
+		return new PrimitiveIterator.OfInt() {
 			private int index = 1;
 			@Override
 			public boolean hasNext() {
 				return index <= n;
 			}
 			@Override
-			public Integer next() {
+			public int nextInt() {
 				if (index > n) {
 					throw new NoSuchElementException();
 				}
@@ -197,8 +553,341 @@ public class Q {
 		
 		long end = System.nanoTime();
 		
+		return report(n, end - start);
+	}
+
+	public static long
+	execute(PrimitiveIterator.OfInt it, IntQuery q, IntSink sink)
+	{
+		long n = 0;
+		long start = System.nanoTime();
+
+		q.start(sink);
+		while (it.hasNext()) {
+			q.next(it.nextInt(), sink);
+			n += 1;
+		}
+		q.end(sink);
+
+		long end = System.nanoTime();
+
+		return report(n, end - start);
+	}
+
+	public static long
+	execute(PrimitiveIterator.OfInt it, IntToDoubleQuery q, DoubleSink sink)
+	{
+		long n = 0;
+		long start = System.nanoTime();
+
+		q.start(sink);
+		while (it.hasNext()) {
+			q.next(it.nextInt(), sink);
+			n += 1;
+		}
+		q.end(sink);
+
+		long end = System.nanoTime();
+
+		return report(n, end - start);
+	}
+
+	public static long
+	execute(PrimitiveIterator.OfDouble it, DoubleQuery q, DoubleSink sink)
+	{
+		long n = 0;
+		long start = System.nanoTime();
+
+		q.start(sink);
+		while (it.hasNext()) {
+			q.next(it.nextDouble(), sink);
+			n += 1;
+		}
+		q.end(sink);
+
+		long end = System.nanoTime();
+
+		return report(n, end - start);
+	}
+
+	// Batch execution: the source is read into blocks of (at most)
+	// batchSize items, and each block is pushed with a single call
+	// to nextBatch().
+
+	public static long
+	executeBatch(PrimitiveIterator.OfInt it, IntQuery q, IntSink sink,
+				 int batchSize)
+	{
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("batch size should be >= 1");
+		}
+		int[] batch = new int[batchSize];
+		long n = 0;
+		long start = System.nanoTime();
+
+		q.start(sink);
+		int len = fill(it, batch);
+		while (len > 0) {
+			q.nextBatch(batch, len, sink);
+			n += len;
+			len = fill(it, batch);
+		}
+		q.end(sink);
+
+		long end = System.nanoTime();
+
+		return report(n, end - start);
+	}
+
+	public static long
+	executeBatch(PrimitiveIterator.OfInt it, IntToDoubleQuery q,
+				 DoubleSink sink, int batchSize)
+	{
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("batch size should be >= 1");
+		}
+		int[] batch = new int[batchSize];
+		long n = 0;
+		long start = System.nanoTime();
+
+		q.start(sink);
+		int len = fill(it, batch);
+		while (len > 0) {
+			q.nextBatch(batch, len, sink);
+			n += len;
+			len = fill(it, batch);
+		}
+		q.end(sink);
+
+		long end = System.nanoTime();
+
+		return report(n, end - start);
+	}
+
+	public static long
+	executeBatch(PrimitiveIterator.OfDouble it, DoubleQuery q,
+				 DoubleSink sink, int batchSize)
+	{
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("batch size should be >= 1");
+		}
+		double[] batch = new double[batchSize];
+		long n = 0;
+		long start = System.nanoTime();
+
+		q.start(sink);
+		int len = fill(it, batch);
+		while (len > 0) {
+			q.nextBatch(batch, len, sink);
+			n += len;
+			len = fill(it, batch);
+		}
+		q.end(sink);
+
+		long end = System.nanoTime();
+
+		return report(n, end - start);
+	}
+
+	// Batch execution over a source that hands out its own blocks (e.g., a
+	// prefetching reader): each block is pushed without being copied.
+
+	public static long
+	executeBatch(IntBatchSource src, IntQuery q, IntSink sink)
+	{
+		long n = 0;
+		long start = System.nanoTime();
+
+		q.start(sink);
+		int len = src.nextBatch();
+		while (len > 0) {
+			q.nextBatch(src.batch(), len, sink);
+			n += len;
+			len = src.nextBatch();
+		}
+		q.end(sink);
+
+		long end = System.nanoTime();
+
+		return report(n, end - start);
+	}
+
+	public static long
+	executeBatch(IntBatchSource src, IntToDoubleQuery q, DoubleSink sink)
+	{
+		long n = 0;
+		long start = System.nanoTime();
+
+		q.start(sink);
+		int len = src.nextBatch();
+		while (len > 0) {
+			q.nextBatch(src.batch(), len, sink);
+			n += len;
+			len = src.nextBatch();
+		}
+		q.end(sink);
+
+		long end = System.nanoTime();
+
+		return report(n, end - start);
+	}
+
+	// Repeated measurement: the query is executed warmups + runs times,
+	// each time over a new iterator obtained from the source supplier,
+	// and statistics about the last runs are returned (see ExecutionStats).
+	// start() re-initializes the query, so the same query and sink are
+	// used for every run. Nothing is printed, except by the sink.
+
+	public static <A,B> ExecutionStats
+	measure(Supplier<? extends Iterator<A>> source, Query<A,B> q, Sink<B> sink,
+			int warmups, int runs)
+	{
+		long[] count = new long[1];
+		Sink<B> counter = countingSink(sink, count);
+		return ExecutionStats.collect(warmups, runs, out -> {
+			Iterator<A> it = source.get();
+			long n = 0;
+			count[0] = 0;
+			q.start(counter);
+			while (it.hasNext()) {
+				q.next(it.next(), counter);
+				n += 1;
+			}
+			q.end(counter);
+			out[0] += count[0];
+			return n;
+		});
+	}
+
+	public static ExecutionStats
+	measure(Supplier<? extends PrimitiveIterator.OfInt> source, IntQuery q,
+			IntSink sink, int warmups, int runs)
+	{
+		long[] count = new long[1];
+		IntSink counter = countingSink(sink, count);
+		return ExecutionStats.collect(warmups, runs, out -> {
+			PrimitiveIterator.OfInt it = source.get();
+			long n = 0;
+			count[0] = 0;
+			q.start(counter);
+			while (it.hasNext()) {
+				q.next(it.nextInt(), counter);
+				n += 1;
+			}
+			q.end(counter);
+			out[0] += count[0];
+			return n;
+		});
+	}
+
+	public static ExecutionStats
+	measure(Supplier<? extends PrimitiveIterator.OfInt> source, IntToDoubleQuery q,
+			DoubleSink sink, int warmups, int runs)
+	{
+		long[] count = new long[1];
+		DoubleSink counter = countingSink(sink, count);
+		return ExecutionStats.collect(warmups, runs, out -> {
+			PrimitiveIterator.OfInt it = source.get();
+			long n = 0;
+			count[0] = 0;
+			q.start(counter);
+			while (it.hasNext()) {
+				q.next(it.nextInt(), counter);
+				n += 1;
+			}
+			q.end(counter);
+			out[0] += count[0];
+			return n;
+		});
+	}
+
+	public static ExecutionStats
+	measure(Supplier<? extends PrimitiveIterator.OfDouble> source, DoubleQuery q,
+			DoubleSink sink, int warmups, int runs)
+	{
+		long[] count = new long[1];
+		DoubleSink counter = countingSink(sink, count);
+		return ExecutionStats.collect(warmups, runs, out -> {
+			PrimitiveIterator.OfDouble it = source.get();
+			long n = 0;
+			count[0] = 0;
+			q.start(counter);
+			while (it.hasNext()) {
+				q.next(it.nextDouble(), counter);
+				n += 1;
+			}
+			q.end(counter);
+			out[0] += count[0];
+			return n;
+		});
+	}
+
+	// Sinks that count the output items in count[0].
+
+	private static <B> Sink<B> countingSink(Sink<B> sink, long[] count) {
+		return new Sink<>() {
+			@Override
+			public void next(B item) {
+				count[0] += 1;
+				sink.next(item);
+			}
+			@Override
+			public void end() {
+				sink.end();
+			}
+		};
+	}
+
+	private static IntSink countingSink(IntSink sink, long[] count) {
+		return new IntSink() {
+			@Override
+			public void next(int item) {
+				count[0] += 1;
+				sink.next(item);
+			}
+			@Override
+			public void end() {
+				sink.end();
+			}
+		};
+	}
+
+	private static DoubleSink countingSink(DoubleSink sink, long[] count) {
+		return new DoubleSink() {
+			@Override
+			public void next(double item) {
+				count[0] += 1;
+				sink.next(item);
+			}
+			@Override
+			public void end() {
+				sink.end();
+			}
+		};
+	}
+
+	private static int fill(PrimitiveIterator.OfInt it, int[] batch) {
+		int len = 0;
+		while (len < batch.length && it.hasNext()) {
+			batch[len] = it.nextInt();
+			len += 1;
+		}
+		return len;
+	}
+
+	private static int fill(PrimitiveIterator.OfDouble it, double[] batch) {
+		int len = 0;
+		while (len < batch.length && it.hasNext()) {
+			batch[len] = it.nextDouble();
+			len += 1;
+		}
+		return len;
+	}
+
+	private static long report(long n, long timeNano) {
+		// DecimalFormat is not thread-safe, and queries are executed from
+		// several threads (e.g., by StreamExecutor)
 		DecimalFormat formatter = new DecimalFormat("#,###");
-		long timeNano = end - start;
 		long timeMsec = timeNano / 1_000_000;
 		System.out.println("duration = " + formatter.format(timeMsec) + " msec");
 		long throughput = (n * 1000L * 1000 * 1000) / timeNano;
@@ -0,0 +1,58 @@
+package dsl;
+
+import utils.DoubleRing;
+
+// Sliding window of doubles that supports quantile queries (shared by
+// SWindowQuantile and DoubleSWindowQuantile).
+
+class QuantileWindow {
+
+	private final int wndSize; // window size
+	private final DoubleRing values; // the window in arrival order
+	private final OrderStatistics sorted; // the window in sorted order
+	private long n; // number of items so far
+
+	QuantileWindow(int wndSize) {
+		if (wndSize < 1) {
+			throw new IllegalArgumentException("window size should be >= 1");
+		}
+		this.wndSize = wndSize;
+		this.values = new DoubleRing(wndSize);
+		this.sorted = new OrderStatistics(wndSize);
+	}
+
+	static double[] check(double[] qs) {
+		if (qs.length == 0) {
+			throw new IllegalArgumentException("at least one quantile is needed");
+		}
+		for (double q : qs) {
+			if (!(q >= 0.0 && q <= 1.0)) {
+				throw new IllegalArgumentException("quantiles should be in [0,1]");
+			}
+		}
+		return qs;
+	}
+
+	void clear() {
+		values.clear();
+		sorted.clear();
+		n = 0;
+	}
+
+	// Adds the value (evicting the oldest one) and returns true if the
+	// window is full.
+	boolean add(double x) {
+		if (values.size() == wndSize) {
+			sorted.delete(values.removeFirst(), n - wndSize);
+		}
+		values.addLast(x);
+		sorted.insert(x, n);
+		n += 1;
+		return values.size() == wndSize;
+	}
+
+	double quantile(double q) {
+		return sorted.quantile(q);
+	}
+
+}
@@ -0,0 +1,81 @@
+package dsl;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.function.ToLongFunction;
+
+// Buffer that puts items with bounded out-of-orderness back in timestamp
+// order (used by the event-time windows).
+//
+// The watermark is the largest timestamp seen minus maxDelay: an item
+// is released once its timestamp is <= the watermark, i.e., once no
+// item with a smaller timestamp is expected anymore. An item that
+// arrives with a timestamp smaller than that of an already released
+// item is late: it is rejected (and counted).
+
+class Reorder<A> {
+
+	private final ToLongFunction<A> ts;
+	private final long maxDelay;
+	private final PriorityQueue<A> pending;
+	private long maxTs; // largest timestamp seen
+	private long releasedTs; // timestamp of the last released item
+	private long late; // number of late items
+
+	Reorder(ToLongFunction<A> ts, long maxDelay) {
+		if (maxDelay < 0) {
+			throw new IllegalArgumentException("max delay should be >= 0");
+		}
+		this.ts = ts;
+		this.maxDelay = maxDelay;
+		this.pending = new PriorityQueue<>(Comparator.comparingLong(ts));
+		clear();
+	}
+
+	void clear() {
+		pending.clear();
+		maxTs = Long.MIN_VALUE;
+		releasedTs = Long.MIN_VALUE;
+		late = 0;
+	}
+
+	long late() {
+		return late;
+	}
+
+	// Returns false if the item is late.
+	boolean add(A item) {
+		long t = ts.applyAsLong(item);
+		if (t < releasedTs) {
+			late += 1;
+			return false;
+		}
+		pending.add(item);
+		maxTs = Math.max(maxTs, t);
+		return true;
+	}
+
+	// The next item whose timestamp is <= the watermark, or null.
+	A poll() {
+		A item = pending.peek();
+		if (item == null || ts.applyAsLong(item) > maxTs - maxDelay) {
+			return null;
+		}
+		return release();
+	}
+
+	// The next item in timestamp order, or null (at the end of the stream).
+	A drain() {
+		if (pending.isEmpty()) {
+			return null;
+		}
+		return release();
+	}
+
+	private A release() {
+		A item = pending.poll();
+		releasedTs = ts.applyAsLong(item);
+		return item;
+	}
+
+}
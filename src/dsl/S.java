@@ -22,4 +22,12 @@ public class S {
 		return new SCollector<>();
 	}
 
+	public static SIntLastCount intLastCount() {
+		return new SIntLastCount();
+	}
+
+	public static SDoubleLastCount doubleLastCount() {
+		return new SDoubleLastCount();
+	}
+
 }
@@ -0,0 +1,32 @@
+package dsl;
+
+import java.text.DecimalFormat;
+
+public class SDoubleLastCount implements DoubleSink {
+
+	private static DecimalFormat formatter = new DecimalFormat("#,###");
+
+	public long count = 0;
+	public double last = 0;
+
+	@Override
+	public void next(double item) {
+		count += 1;
+		last = item;
+	}
+
+	@Override
+	public void nextBatch(double[] items, int len) {
+		if (len > 0) {
+			count += len;
+			last = items[len - 1];
+		}
+	}
+
+	@Override
+	public void end() {
+		System.out.println("# output items = " + formatter.format(count));
+		System.out.println("last output item = " + last);
+	}
+
+}
@@ -0,0 +1,46 @@
+package dsl;
+
+import java.util.function.Function;
+
+// Aggregation over a sliding window for any monoid, with amortized O(1)
+// combine operations per item (see TwoStacks). Unlike SWindowInv, it
+// does not need an inverse operation, so it works for max, min, argmax,
+// etc. Every item is first lifted to an element of the monoid.
+
+public class SWindow<A,B> implements Query<A,B> {
+
+	private final int wndSize; // window size
+	private final Function<A,B> lift;
+	private final TwoStacks<B> window;
+
+	public SWindow(int wndSize, Function<A,B> lift, Monoid<B> monoid) {
+		if (wndSize < 1) {
+			throw new IllegalArgumentException("window size should be >= 1");
+		}
+		this.wndSize = wndSize;
+		this.lift = lift;
+		this.window = new TwoStacks<>(wndSize, monoid);
+	}
+
+	@Override
+	public void start(Sink<B> sink) {
+		window.clear();
+	}
+
+	@Override
+	public void next(A item, Sink<B> sink) {
+		if (window.size() == wndSize) {
+			window.pop();
+		}
+		window.push(lift.apply(item));
+		if (window.size() == wndSize) {
+			sink.next(window.query());
+		}
+	}
+
+	@Override
+	public void end(Sink<B> sink) {
+		sink.end();
+	}
+
+}
@@ -0,0 +1,78 @@
+package dsl;
+
+import java.util.Arrays;
+import java.util.function.ToDoubleFunction;
+
+import utils.DoubleRing;
+import utils.LongRing;
+
+// For every sliding window, the item with the largest key (e.g., the
+// sample with the largest value, which also carries its timestamp).
+// If several items have the largest key, the oldest one is emitted.
+//
+// Like IntSWindowMinMax, it keeps a monotonic deque of the candidates
+// in two rings (keys and positions), and the candidate items in an
+// array indexed by their position: amortized O(1) work per item and no
+// allocation after construction.
+
+public class SWindowArgMax<A> implements Query<A,A> {
+
+	private final int wndSize; // window size
+	private final ToDoubleFunction<A> key;
+	private final DoubleRing keys; // deque: keys
+	private final LongRing positions; // deque: positions of the items
+	private final A[] items; // the item at position p is in items[p & mask]
+	private final int mask;
+	private long n; // number of items so far
+
+	@SuppressWarnings("unchecked")
+	public SWindowArgMax(int wndSize, ToDoubleFunction<A> key) {
+		if (wndSize < 1) {
+			throw new IllegalArgumentException("window size should be >= 1");
+		}
+		this.wndSize = wndSize;
+		this.key = key;
+		// the deque holds up to wndSize + 1 items before the eviction
+		this.keys = new DoubleRing(wndSize + 1);
+		this.positions = new LongRing(wndSize + 1);
+		int capacity = Integer.highestOneBit(wndSize) << 1;
+		this.mask = capacity - 1;
+		this.items = (A[]) new Object[capacity];
+	}
+
+	@Override
+	public void start(Sink<A> sink) {
+		keys.clear();
+		positions.clear();
+		Arrays.fill(items, null);
+		n = 0;
+	}
+
+	@Override
+	public void next(A item, Sink<A> sink) {
+		double k = key.applyAsDouble(item);
+		// drop the candidates with a strictly smaller key
+		while (!keys.isEmpty() && keys.last() < k) {
+			keys.removeLast();
+			items[(int) positions.removeLast() & mask] = null;
+		}
+		keys.addLast(k);
+		positions.addLast(n);
+		items[(int) n & mask] = item;
+		n += 1;
+		// evict the front if it slid out of the window
+		if (positions.first() <= n - 1 - wndSize) {
+			keys.removeFirst();
+			items[(int) positions.removeFirst() & mask] = null;
+		}
+		if (n >= wndSize) {
+			sink.next(items[(int) positions.first() & mask]);
+		}
+	}
+
+	@Override
+	public void end(Sink<A> sink) {
+		sink.end();
+	}
+
+}
@@ -12,7 +12,8 @@ public class SWindowInv<A> implements Query<A,A> {
 	private final BinaryOperator<A> insert;
 	private final BinaryOperator<A> remove;
 	private final int wndSize; // window size
-	private final A[] buffer;
+	private final A[] buffer; // capacity: a power of two >= wndSize
+	private final int mask;
 	private A agg; // current aggregate
 	private int indexOldest; // index to oldest element
 	private int nElements; // number of elements in buffer
@@ -27,7 +28,12 @@ public class SWindowInv<A> implements Query<A,A> {
 		this.insert = insert;
 		this.remove = remove;
 		this.wndSize = wndSize;
-		this.buffer = (A[]) new Object[wndSize];
+		int capacity = Integer.highestOneBit(wndSize);
+		if (capacity < wndSize) {
+			capacity *= 2;
+		}
+		this.buffer = (A[]) new Object[capacity];
+		this.mask = capacity - 1;
 		this.agg = init;
 		this.indexOldest = 0;
 		this.nElements = 0;
@@ -44,14 +50,13 @@ public class SWindowInv<A> implements Query<A,A> {
 	public void next(A item, Sink<A> sink) {
 		if (nElements == wndSize) {
 			agg = remove.apply(agg, buffer[indexOldest]);
-			buffer[indexOldest] = item;
-			indexOldest = (indexOldest + 1) % wndSize;
-			agg = insert.apply(agg, item);
-		} else { // nElements < wndSize
-			buffer[nElements] = item;
-			nElements += 1;
-			agg = insert.apply(agg, item);
+			buffer[indexOldest] = null;
+			indexOldest = (indexOldest + 1) & mask;
+			nElements -= 1;
 		}
+		buffer[(indexOldest + nElements) & mask] = item;
+		nElements += 1;
+		agg = insert.apply(agg, item);
 		if (nElements == wndSize) {
 			sink.next(agg);
 		}
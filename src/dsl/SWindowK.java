@@ -0,0 +1,75 @@
+package dsl;
+
+import java.util.Arrays;
+import java.util.function.Function;
+
+// Sliding window of size k (generalizes SWindow2 and SWindow3): for
+// every item from the k-th on, op is applied to a view of the last k
+// items. The view reads the ring buffer of the window directly, so no
+// array is copied or allocated per item.
+
+public class SWindowK<A,B> implements Query<A,B> {
+
+	private final int k; // window size
+	private final Function<WindowView<A>,B> op;
+	private final A[] buffer; // capacity: a power of two >= k
+	private final int mask;
+	private int indexOldest; // index to oldest element
+	private int nElements; // number of elements in buffer
+
+	private final WindowView<A> view = new WindowView<>() {
+		@Override
+		public int size() {
+			return nElements;
+		}
+		@Override
+		public A get(int i) {
+			if (i < 0 || i >= nElements) {
+				throw new IndexOutOfBoundsException(i);
+			}
+			return buffer[(indexOldest + i) & mask];
+		}
+	};
+
+	@SuppressWarnings("unchecked")
+	public SWindowK(int k, Function<WindowView<A>,B> op) {
+		if (k < 1) {
+			throw new IllegalArgumentException("window size should be >= 1");
+		}
+		this.k = k;
+		this.op = op;
+		int capacity = Integer.highestOneBit(k);
+		if (capacity < k) {
+			capacity *= 2;
+		}
+		this.buffer = (A[]) new Object[capacity];
+		this.mask = capacity - 1;
+	}
+
+	@Override
+	public void start(Sink<B> sink) {
+		Arrays.fill(buffer, null);
+		indexOldest = 0;
+		nElements = 0;
+	}
+
+	@Override
+	public void next(A item, Sink<B> sink) {
+		if (nElements == k) {
+			buffer[indexOldest] = null;
+			indexOldest = (indexOldest + 1) & mask;
+			nElements -= 1;
+		}
+		buffer[(indexOldest + nElements) & mask] = item;
+		nElements += 1;
+		if (nElements == k) {
+			sink.next(op.apply(view));
+		}
+	}
+
+	@Override
+	public void end(Sink<B> sink) {
+		sink.end();
+	}
+
+}
@@ -9,7 +9,8 @@ public class SWindowNv<A,B> implements Query<A,B> {
 	private final B init;
 	private final Func2<B,A,B> op;
 	private final int wndSize; // window size
-	private final A[] buffer;
+	private final A[] buffer; // capacity: a power of two >= wndSize
+	private final int mask;
 	private int indexOldest; // index to oldest element
 	private int nElements; // number of elements in buffer
 
@@ -20,7 +21,12 @@ public class SWindowNv<A,B> implements Query<A,B> {
 		this.init = init;
 		this.op = op;
 		this.wndSize = wndSize;
-		this.buffer = (A[]) new Object[wndSize];
+		int capacity = Integer.highestOneBit(wndSize);
+		if (capacity < wndSize) {
+			capacity *= 2;
+		}
+		this.buffer = (A[]) new Object[capacity];
+		this.mask = capacity - 1;
 		this.indexOldest = 0;
 		this.nElements = 0;
 	}
@@ -34,18 +40,18 @@ public class SWindowNv<A,B> implements Query<A,B> {
 	@Override
 	public void next(A item, Sink<B> sink) {
 		if (nElements == wndSize) {
-			buffer[indexOldest] = item;
-			indexOldest = (indexOldest + 1) % wndSize;
-		} else { // nElements < wndSize
-			buffer[nElements] = item;
-			nElements += 1;
+			buffer[indexOldest] = null;
+			indexOldest = (indexOldest + 1) & mask;
+			nElements -= 1;
 		}
+		buffer[(indexOldest + nElements) & mask] = item;
+		nElements += 1;
 		if (nElements == wndSize) {
 			B agg = init;
 			int index = indexOldest;
 			for (int i=0; i<nElements; i++) {
 				agg = op.apply(agg, buffer[index]);
-				index = (index + 1) % wndSize;
+				index = (index + 1) & mask;
 			}
 			sink.next(agg);	
 		}
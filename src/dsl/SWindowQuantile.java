@@ -0,0 +1,49 @@
+package dsl;
+
+import java.util.function.ToDoubleFunction;
+
+// Quantiles (e.g., the median) over a sliding window of wndSize values,
+// with O(log wndSize) (expected) work per item: the window is kept in
+// an order-statistic tree (see OrderStatistics) next to a ring of the
+// values in arrival order, which tells which value to evict.
+//
+// Quantiles are computed with linear interpolation between the two
+// closest ranks (as in numpy's default). For every full window, it
+// emits a new array with one quantile per element of qs.
+
+public class SWindowQuantile<A> implements Query<A,double[]> {
+
+	private final int wndSize; // window size
+	private final ToDoubleFunction<A> value;
+	private final double[] qs;
+	private final QuantileWindow window;
+
+	public SWindowQuantile(int wndSize, ToDoubleFunction<A> value, double... qs) {
+		this.wndSize = wndSize;
+		this.value = value;
+		this.qs = QuantileWindow.check(qs).clone();
+		this.window = new QuantileWindow(wndSize);
+	}
+
+	@Override
+	public void start(Sink<double[]> sink) {
+		window.clear();
+	}
+
+	@Override
+	public void next(A item, Sink<double[]> sink) {
+		if (window.add(value.applyAsDouble(item))) {
+			double[] out = new double[qs.length];
+			for (int i=0; i<qs.length; i++) {
+				out[i] = window.quantile(qs[i]);
+			}
+			sink.next(out);
+		}
+	}
+
+	@Override
+	public void end(Sink<double[]> sink) {
+		sink.end();
+	}
+
+}
@@ -0,0 +1,144 @@
+package dsl;
+
+import java.util.function.ToDoubleFunction;
+
+import utils.DoubleRing;
+import utils.LongRing;
+
+// Several statistics over the same sliding window of wndSize values,
+// which are buffered once (instead of once per statistic, as with
+// several windows combined with Q.parallel).
+//
+// The statistics to compute are selected with the flags MEAN, STDEV,
+// MIN and MAX; the count is always computed. Mean and standard
+// deviation are updated in O(1) per item (Welford's updates, which are
+// more accurate than a running sum of squares). Min and max are kept
+// with monotonic deques of positions in the shared buffer (amortized
+// O(1)). No memory is allocated per item: every window is emitted in
+// the same WindowStats, which is updated in place.
+
+public class SWindowStats<A> implements Query<A,WindowStats> {
+
+	public static final int MEAN = 1;
+	public static final int STDEV = 2;
+	public static final int MIN = 4;
+	public static final int MAX = 8;
+	public static final int ALL = MEAN | STDEV | MIN | MAX;
+
+	private final int wndSize; // window size
+	private final ToDoubleFunction<A> value;
+	private final boolean meanOn, stdevOn, minOn, maxOn;
+	private final DoubleRing values; // the window (shared by all statistics)
+	private final LongRing minPositions; // deque for the minimum
+	private final LongRing maxPositions; // deque for the maximum
+	private long n; // number of items so far
+	private double mean;
+	private double m2; // sum of squared deviations from the mean
+	private final WindowStats stats; // the output (reused)
+
+	public SWindowStats(int wndSize, ToDoubleFunction<A> value, int aggregates) {
+		if (wndSize < 1) {
+			throw new IllegalArgumentException("window size should be >= 1");
+		}
+		this.wndSize = wndSize;
+		this.value = value;
+		this.meanOn = (aggregates & (MEAN | STDEV)) != 0;
+		this.stdevOn = (aggregates & STDEV) != 0;
+		this.minOn = (aggregates & MIN) != 0;
+		this.maxOn = (aggregates & MAX) != 0;
+		this.values = new DoubleRing(wndSize);
+		this.minPositions = new LongRing(minOn ? wndSize : 1);
+		this.maxPositions = new LongRing(maxOn ? wndSize : 1);
+		this.stats = new WindowStats(wndSize, Double.NaN, Double.NaN, Double.NaN, Double.NaN);
+	}
+
+	@Override
+	public void start(Sink<WindowStats> sink) {
+		values.clear();
+		minPositions.clear();
+		maxPositions.clear();
+		n = 0;
+		mean = 0.0;
+		m2 = 0.0;
+	}
+
+	// the value at position pos (which must be in the window)
+	private double at(long pos) {
+		return values.get((int) (pos - (n - values.size())));
+	}
+
+	@Override
+	public void next(A item, Sink<WindowStats> sink) {
+		double x = value.applyAsDouble(item);
+
+		// evict the oldest value
+		if (values.size() == wndSize) {
+			double old = values.removeFirst();
+			if (meanOn) {
+				int k = values.size();
+				if (k == 0) {
+					mean = 0.0;
+					m2 = 0.0;
+				} else {
+					double d = old - mean;
+					mean -= d / k;
+					m2 -= d * (old - mean);
+				}
+			}
+			long oldest = n - wndSize;
+			if (minOn && minPositions.first() == oldest) {
+				minPositions.removeFirst();
+			}
+			if (maxOn && maxPositions.first() == oldest) {
+				maxPositions.removeFirst();
+			}
+		}
+
+		// insert the new value
+		if (minOn) {
+			while (!minPositions.isEmpty() && at(minPositions.last()) >= x) {
+				minPositions.removeLast();
+			}
+		}
+		if (maxOn) {
+			while (!maxPositions.isEmpty() && at(maxPositions.last()) <= x) {
+				maxPositions.removeLast();
+			}
+		}
+		values.addLast(x);
+		n += 1;
+		if (minOn) {
+			minPositions.addLast(n - 1);
+		}
+		if (maxOn) {
+			maxPositions.addLast(n - 1);
+		}
+		if (meanOn) {
+			double d = x - mean;
+			mean += d / values.size();
+			m2 += d * (x - mean);
+		}
+
+		if (values.size() == wndSize) {
+			if (meanOn) {
+				stats.mean = mean;
+			}
+			if (stdevOn) {
+				stats.stdev = Math.sqrt(Math.max(m2, 0.0) / wndSize);
+			}
+			if (minOn) {
+				stats.min = at(minPositions.first());
+			}
+			if (maxOn) {
+				stats.max = at(maxPositions.first());
+			}
+			sink.next(stats);
+		}
+	}
+
+	@Override
+	public void end(Sink<WindowStats> sink) {
+		sink.end();
+	}
+
+}
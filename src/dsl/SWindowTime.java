@@ -0,0 +1,83 @@
+package dsl;
+
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+import utils.LongRing;
+
+// Event-time sliding window: for every item with timestamp t, the
+// aggregate of the items with timestamps in (t - duration, t]. The
+// number of items in a window varies when the stream has gaps or bursts.
+//
+// Items may arrive out of order by at most maxDelay (see Reorder): they
+// are emitted in timestamp order, after a delay of maxDelay, and late
+// items are dropped (see late()). With maxDelay = 0 nothing is buffered.
+// Evictions are O(1) amortized (see TwoStacks).
+
+public class SWindowTime<A,B> implements Query<A,B> {
+
+	private final long duration;
+	private final ToLongFunction<A> ts;
+	private final Function<A,B> lift;
+	private final TwoStacks<B> window;
+	private final LongRing timestamps; // timestamps of the window items
+	private final Reorder<A> reorder;
+
+	public SWindowTime(long duration, ToLongFunction<A> ts, Function<A,B> lift,
+					   Monoid<B> monoid, long maxDelay)
+	{
+		if (duration < 1) {
+			throw new IllegalArgumentException("duration should be >= 1");
+		}
+		this.duration = duration;
+		this.ts = ts;
+		this.lift = lift;
+		this.window = new TwoStacks<>(16, monoid);
+		this.timestamps = new LongRing(16);
+		this.reorder = new Reorder<>(ts, maxDelay);
+	}
+
+	// number of late items dropped so far
+	public long late() {
+		return reorder.late();
+	}
+
+	@Override
+	public void start(Sink<B> sink) {
+		window.clear();
+		timestamps.clear();
+		reorder.clear();
+	}
+
+	@Override
+	public void next(A item, Sink<B> sink) {
+		if (!reorder.add(item)) {
+			return;
+		}
+		A next;
+		while ((next = reorder.poll()) != null) {
+			slide(next, sink);
+		}
+	}
+
+	private void slide(A item, Sink<B> sink) {
+		long t = ts.applyAsLong(item);
+		while (!timestamps.isEmpty() && timestamps.first() <= t - duration) {
+			timestamps.removeFirst();
+			window.pop();
+		}
+		timestamps.addLast(t);
+		window.push(lift.apply(item));
+		sink.next(window.query());
+	}
+
+	@Override
+	public void end(Sink<B> sink) {
+		A next;
+		while ((next = reorder.drain()) != null) {
+			slide(next, sink);
+		}
+		sink.end();
+	}
+
+}
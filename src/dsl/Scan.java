@@ -15,6 +15,14 @@ public class Scan<A, B> implements Query<A, B> {
 		this.op = op;
 	}
 
+	B init() {
+		return init;
+	}
+
+	Func2<B,A,B> op() {
+		return op;
+	}
+
 	@Override
 	public void start(Sink<B> sink) {
 		this.agg = init;
@@ -0,0 +1,106 @@
+package dsl;
+
+import java.util.Arrays;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
+
+// Session window: the stream is cut into consecutive segments, and op is
+// applied to (a view of) every segment. A new segment starts with an
+// item when
+//   - the boundary predicate holds for it (e.g., it is an R peak), or
+//   - its timestamp is more than maxGap after that of the previous item, or
+//   - the current segment already has maxLength items.
+// Any of the three conditions can be disabled (null boundary, null ts,
+// maxLength = Integer.MAX_VALUE). The last segment is emitted when the
+// stream ends.
+//
+// The items of the current segment are kept in a buffer that is reused
+// for the next segment (it only grows up to the longest segment), and op
+// reads them through a reusable WindowView.
+
+public class SessionWindow<A,B> implements Query<A,B> {
+
+	private final Predicate<A> boundary;
+	private final ToLongFunction<A> ts;
+	private final long maxGap;
+	private final int maxLength;
+	private final Function<WindowView<A>,B> op;
+	private A[] buffer; // items of the current segment
+	private int nElements; // number of items in the current segment
+	private long lastTs; // timestamp of the last item
+
+	private final WindowView<A> view = new WindowView<>() {
+		@Override
+		public int size() {
+			return nElements;
+		}
+		@Override
+		public A get(int i) {
+			if (i < 0 || i >= nElements) {
+				throw new IndexOutOfBoundsException(i);
+			}
+			return buffer[i];
+		}
+	};
+
+	@SuppressWarnings("unchecked")
+	public SessionWindow(Predicate<A> boundary, ToLongFunction<A> ts, long maxGap,
+						 int maxLength, Function<WindowView<A>,B> op)
+	{
+		if (maxGap < 0) {
+			throw new IllegalArgumentException("max gap should be >= 0");
+		}
+		if (maxLength < 1) {
+			throw new IllegalArgumentException("max length should be >= 1");
+		}
+		this.boundary = boundary;
+		this.ts = ts;
+		this.maxGap = maxGap;
+		this.maxLength = maxLength;
+		this.op = op;
+		this.buffer = (A[]) new Object[16];
+		this.nElements = 0;
+	}
+
+	@Override
+	public void start(Sink<B> sink) {
+		Arrays.fill(buffer, 0, nElements, null);
+		nElements = 0;
+	}
+
+	@Override
+	public void next(A item, Sink<B> sink) {
+		long t = ts != null ? ts.applyAsLong(item) : 0;
+		if (nElements > 0 && startsSegment(item, t)) {
+			emit(sink);
+		}
+		if (nElements == buffer.length) {
+			buffer = Arrays.copyOf(buffer, 2 * buffer.length);
+		}
+		buffer[nElements] = item;
+		nElements += 1;
+		lastTs = t;
+	}
+
+	private boolean startsSegment(A item, long t) {
+		return nElements >= maxLength
+			|| (boundary != null && boundary.test(item))
+			|| (ts != null && t - lastTs > maxGap);
+	}
+
+	private void emit(Sink<B> sink) {
+		sink.next(op.apply(view));
+		Arrays.fill(buffer, 0, nElements, null);
+		nElements = 0;
+	}
+
+	@Override
+	public void end(Sink<B> sink) {
+		if (nElements > 0) {
+			emit(sink);
+		}
+		sink.end();
+	}
+
+}
@@ -0,0 +1,301 @@
+package dsl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Executor for many independent streams (e.g., one ECG feed per bed).
+//
+// Each submitted (source, query, sink) triple is a stream. Streams are
+// scheduled cooperatively on a fixed pool of nThreads threads: a stream
+// runs for one micro-batch of at most 'quantum' items and then goes to
+// the back of the run queue, so thousands of streams share a few cores
+// fairly. A stream is only ever run by one thread at a time, so queries
+// and sinks need no synchronization.
+//
+// A live source (LiveSource) may have no item yet: the stream is then
+// parked, without a thread, until the source signals that an item has
+// arrived (or that it has ended). A recorded source (an Iterator) has
+// all its items available up front.
+//
+// For every stream the executor records the number of items, the
+// throughput, and the lag of the items: how long after its arrival an
+// item was passed to the query, i.e., how far the processing is behind
+// the stream. The items of a recorded source are available from the
+// moment the stream is queued, so their lag is the time the stream
+// waited in the run queue. The scheduling lag (the wait in the run
+// queue of every micro-batch) is recorded separately.
+
+public class StreamExecutor {
+
+	private final int quantum;
+	private final ExecutorService pool;
+	private final List<Stream<?,?>> streams = Collections.synchronizedList(new ArrayList<>());
+	private final AtomicInteger active = new AtomicInteger();
+	private final Object lock = new Object();
+
+	// Per-stream statistics (updated by one thread at a time).
+	public static class Stats {
+		public final String name;
+		private volatile long items;
+		private volatile long slices;
+		private volatile long startNano;
+		private volatile long endNano;
+		private volatile long totalLagNano; // of the items
+		private volatile long maxLagNano;
+		private volatile long totalSchedulingLagNano; // of the micro-batches
+		private volatile long maxSchedulingLagNano;
+		private volatile boolean done;
+		private volatile Throwable error;
+
+		private Stats(String name) {
+			this.name = name;
+		}
+
+		public long items() {
+			return items;
+		}
+
+		public boolean isDone() {
+			return done;
+		}
+
+		public Throwable error() {
+			return error;
+		}
+
+		// items per second (up to now, or until the stream ended)
+		public double throughput() {
+			long end = done ? endNano : System.nanoTime();
+			long time = end - startNano;
+			return time > 0 ? items * 1e9 / time : 0.0;
+		}
+
+		// from the arrival of an item until it is passed to the query
+		public double avgLagMsec() {
+			return items > 0 ? totalLagNano / (items * 1e6) : 0.0;
+		}
+
+		public double maxLagMsec() {
+			return maxLagNano / 1e6;
+		}
+
+		// from the (re)queueing of the stream until its micro-batch starts
+		public double avgSchedulingLagMsec() {
+			return slices > 0 ? totalSchedulingLagNano / (slices * 1e6) : 0.0;
+		}
+
+		public double maxSchedulingLagMsec() {
+			return maxSchedulingLagNano / 1e6;
+		}
+
+		@Override
+		public String toString() {
+			return String.format(
+				"%s: %d items, %.0f items/sec, lag avg %.3f msec, max %.3f msec, scheduling lag avg %.3f msec, max %.3f msec%s",
+				name, items, throughput(), avgLagMsec(), maxLagMsec(),
+				avgSchedulingLagMsec(), maxSchedulingLagMsec(),
+				error != null ? ", FAILED: " + error : ""
+			);
+		}
+	}
+
+	// A recorded source: every item is available, and arrives (for the
+	// lag) when the stream is queued.
+	private static class Recorded<A> implements LiveSource<A> {
+		final Iterator<A> it;
+		long queuedNano;
+
+		Recorded(Iterator<A> it) {
+			this.it = it;
+		}
+
+		@Override
+		public A poll() {
+			return it.hasNext() ? it.next() : null;
+		}
+
+		@Override
+		public boolean isEnded() {
+			return !it.hasNext();
+		}
+
+		@Override
+		public long arrivalNano() {
+			return queuedNano;
+		}
+
+		@Override
+		public void setReady(Runnable ready) {
+			// never waits
+		}
+	}
+
+	private class Stream<A,B> implements Runnable {
+		final LiveSource<A> source;
+		final Recorded<A> recorded; // source, if it is recorded
+		final Query<A,B> q;
+		final Sink<B> sink;
+		final Stats stats;
+		final AtomicBoolean parked = new AtomicBoolean();
+		volatile boolean signalled; // an item arrived since the last poll
+		long readyNano; // when the stream was (re)queued
+		boolean started;
+
+		@SuppressWarnings("unchecked")
+		Stream(String name, LiveSource<A> source, Query<A,B> q, Sink<B> sink) {
+			this.source = source;
+			this.recorded = source instanceof Recorded ? (Recorded<A>) source : null;
+			this.q = q;
+			this.sink = sink;
+			this.stats = new Stats(name);
+		}
+
+		// Called by the source when an item arrives (any thread).
+		void signal() {
+			signalled = true;
+			if (parked.compareAndSet(true, false)) {
+				schedule();
+			}
+		}
+
+		void schedule() {
+			readyNano = System.nanoTime();
+			pool.execute(this);
+		}
+
+		@Override
+		public void run() {
+			long now = System.nanoTime();
+			long lag = now - readyNano;
+			stats.totalSchedulingLagNano += lag;
+			stats.maxSchedulingLagNano = Math.max(stats.maxSchedulingLagNano, lag);
+			stats.slices += 1;
+			try {
+				if (!started) {
+					started = true;
+					stats.startNano = now;
+					q.start(sink);
+				}
+				if (recorded != null) {
+					recorded.queuedNano = readyNano;
+				}
+				long n = 0;
+				long totalLag = 0;
+				long maxLag = stats.maxLagNano;
+				while (n < quantum) {
+					signalled = false;
+					A item = source.poll();
+					if (item == null) {
+						break;
+					}
+					// the items of a recorded source all have the lag of the
+					// micro-batch (one clock reading per micro-batch)
+					long itemLag = (recorded != null ? now : System.nanoTime()) - source.arrivalNano();
+					totalLag += itemLag;
+					maxLag = Math.max(maxLag, itemLag);
+					q.next(item, sink);
+					n += 1;
+				}
+				stats.items += n;
+				stats.totalLagNano += totalLag;
+				stats.maxLagNano = maxLag;
+				if (n == quantum) {
+					schedule();
+				} else if (source.isEnded()) {
+					q.end(sink);
+					finish(null);
+				} else {
+					// no item yet: park until the source signals (an item
+					// that arrived after the poll has set 'signalled')
+					parked.set(true);
+					if (signalled && parked.compareAndSet(true, false)) {
+						schedule();
+					}
+				}
+			} catch (Throwable t) {
+				finish(t);
+			}
+		}
+
+		private void finish(Throwable t) {
+			stats.error = t;
+			stats.endNano = System.nanoTime();
+			stats.done = true;
+			if (active.decrementAndGet() == 0) {
+				synchronized (lock) {
+					lock.notifyAll();
+				}
+			}
+		}
+	}
+
+	public StreamExecutor(int nThreads, int quantum) {
+		if (nThreads < 1) {
+			throw new IllegalArgumentException("number of threads should be >= 1");
+		}
+		if (quantum < 1) {
+			throw new IllegalArgumentException("quantum should be >= 1");
+		}
+		this.quantum = quantum;
+		this.pool = new ThreadPoolExecutor(
+			nThreads, nThreads, 0L, TimeUnit.MILLISECONDS,
+			new LinkedBlockingQueue<>(),
+			r -> {
+				Thread t = new Thread(r, "dsl-stream");
+				t.setDaemon(true);
+				return t;
+			}
+		);
+	}
+
+	public StreamExecutor(int quantum) {
+		this(Runtime.getRuntime().availableProcessors(), quantum);
+	}
+
+	// A recorded stream (e.g., a replayed file).
+	public <A,B> Stats submit(String name, Iterator<A> source, Query<A,B> q, Sink<B> sink) {
+		return submit(name, new Recorded<>(source), q, sink);
+	}
+
+	// A live stream.
+	public <A,B> Stats submit(String name, LiveSource<A> source, Query<A,B> q, Sink<B> sink) {
+		Stream<A,B> stream = new Stream<>(name, source, q, sink);
+		streams.add(stream);
+		active.incrementAndGet();
+		source.setReady(stream::signal);
+		stream.schedule();
+		return stream.stats;
+	}
+
+	// Wait until every submitted stream has ended (or failed).
+	public void awaitAll() throws InterruptedException {
+		synchronized (lock) {
+			while (active.get() > 0) {
+				lock.wait();
+			}
+		}
+	}
+
+	public List<Stats> stats() {
+		List<Stats> list = new ArrayList<>();
+		synchronized (streams) {
+			for (Stream<?,?> stream : streams) {
+				list.add(stream.stats);
+			}
+		}
+		return list;
+	}
+
+	public void shutdown() {
+		pool.shutdown();
+	}
+
+}
@@ -0,0 +1,89 @@
+package dsl;
+
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+// Event-time tumbling window: the aggregate of the items with
+// timestamps in [k * duration, (k+1) * duration), for every k such that
+// the interval contains at least one item. A window is emitted when the
+// first item of a later window arrives, and the last window when the
+// stream ends.
+//
+// Out-of-order items are handled as in SWindowTime.
+
+public class TWindowTime<A,B> implements Query<A,B> {
+
+	private final long duration;
+	private final ToLongFunction<A> ts;
+	private final Function<A,B> lift;
+	private final Monoid<B> monoid;
+	private final Reorder<A> reorder;
+	private B agg; // aggregate of the current window
+	private long windowEnd; // end of the current window (exclusive)
+	private boolean empty; // no items yet
+
+	public TWindowTime(long duration, ToLongFunction<A> ts, Function<A,B> lift,
+					   Monoid<B> monoid, long maxDelay)
+	{
+		if (duration < 1) {
+			throw new IllegalArgumentException("duration should be >= 1");
+		}
+		this.duration = duration;
+		this.ts = ts;
+		this.lift = lift;
+		this.monoid = monoid;
+		this.reorder = new Reorder<>(ts, maxDelay);
+		this.agg = monoid.identity();
+		this.empty = true;
+	}
+
+	// number of late items dropped so far
+	public long late() {
+		return reorder.late();
+	}
+
+	@Override
+	public void start(Sink<B> sink) {
+		reorder.clear();
+		agg = monoid.identity();
+		empty = true;
+	}
+
+	@Override
+	public void next(A item, Sink<B> sink) {
+		if (!reorder.add(item)) {
+			return;
+		}
+		A next;
+		while ((next = reorder.poll()) != null) {
+			add(next, sink);
+		}
+	}
+
+	private void add(A item, Sink<B> sink) {
+		long t = ts.applyAsLong(item);
+		if (!empty && t >= windowEnd) {
+			sink.next(agg);
+			agg = monoid.identity();
+			empty = true;
+		}
+		if (empty) {
+			windowEnd = Math.floorDiv(t, duration) * duration + duration;
+			empty = false;
+		}
+		agg = monoid.combine(agg, lift.apply(item));
+	}
+
+	@Override
+	public void end(Sink<B> sink) {
+		A next;
+		while ((next = reorder.drain()) != null) {
+			add(next, sink);
+		}
+		if (!empty) {
+			sink.next(agg);
+		}
+		sink.end();
+	}
+
+}
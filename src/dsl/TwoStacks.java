@@ -0,0 +1,94 @@
+package dsl;
+
+import java.util.Arrays;
+
+// FIFO queue of partial aggregates with an O(1) (amortized) aggregate of
+// the whole queue, for any monoid (Two-Stacks algorithm).
+//
+// New values are pushed on the back stack, which only keeps the
+// aggregate of its values. Values are popped from the front stack, which
+// stores for every position the aggregate from that position to the
+// newest value of the stack. When the front stack is empty, the back
+// stack is flipped onto it, so every value is combined at most twice.
+//
+// The arrays grow when the queue is full (which never happens when the
+// queue is used for a window of fixed size); otherwise no memory is
+// allocated after construction.
+
+class TwoStacks<A> {
+
+	private final Monoid<A> monoid;
+	private A[] back; // back[0] is the oldest value
+	private int nBack;
+	private A backAgg;
+	private A[] front; // front[nFront-1] is the oldest value
+	private int nFront;
+
+	@SuppressWarnings("unchecked")
+	TwoStacks(int capacity, Monoid<A> monoid) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("capacity should be >= 1");
+		}
+		this.monoid = monoid;
+		this.back = (A[]) new Object[capacity];
+		this.front = (A[]) new Object[capacity];
+		clear();
+	}
+
+	int size() {
+		return nBack + nFront;
+	}
+
+	void clear() {
+		Arrays.fill(back, null);
+		Arrays.fill(front, null);
+		nBack = 0;
+		nFront = 0;
+		backAgg = monoid.identity();
+	}
+
+	void push(A value) {
+		if (size() == back.length) {
+			back = Arrays.copyOf(back, 2 * back.length);
+			front = Arrays.copyOf(front, 2 * front.length);
+		}
+		back[nBack] = value;
+		nBack += 1;
+		backAgg = monoid.combine(backAgg, value);
+	}
+
+	void pop() {
+		if (nFront == 0) {
+			if (nBack == 0) {
+				throw new IllegalStateException("TwoStacks is empty");
+			}
+			flip();
+		}
+		nFront -= 1;
+		front[nFront] = null;
+	}
+
+	// aggregate of all values, oldest to newest
+	A query() {
+		if (nFront == 0) {
+			return backAgg;
+		}
+		return monoid.combine(front[nFront - 1], backAgg);
+	}
+
+	private void flip() {
+		A agg = back[nBack - 1];
+		front[0] = agg;
+		for (int i=1; i<nBack; i++) {
+			agg = monoid.combine(back[nBack - 1 - i], agg);
+			front[i] = agg;
+		}
+		for (int i=0; i<nBack; i++) {
+			back[i] = null;
+		}
+		nFront = nBack;
+		nBack = 0;
+		backAgg = monoid.identity();
+	}
+
+}
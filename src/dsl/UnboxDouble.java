@@ -0,0 +1,43 @@
+package dsl;
+
+// Adapter: view a Query<Double,Double> as an DoubleQuery.
+// Items are boxed on the way in and unboxed on the way out.
+
+public class UnboxDouble implements DoubleQuery {
+
+	private final Query<Double,Double> q;
+	private DoubleSink downstream;
+	private final Sink<Double> unboxing = new Sink<Double>() {
+		@Override
+		public void next(Double item) {
+			downstream.next(item);
+		}
+		@Override
+		public void end() {
+			downstream.end();
+		}
+	};
+
+	public UnboxDouble(Query<Double,Double> q) {
+		this.q = q;
+	}
+
+	@Override
+	public void start(DoubleSink sink) {
+		downstream = sink;
+		q.start(unboxing);
+	}
+
+	@Override
+	public void next(double item, DoubleSink sink) {
+		downstream = sink;
+		q.next(item, unboxing);
+	}
+
+	@Override
+	public void end(DoubleSink sink) {
+		downstream = sink;
+		q.end(unboxing);
+	}
+
+}
@@ -0,0 +1,43 @@
+package dsl;
+
+// Adapter: view a Query<Integer,Integer> as an IntQuery.
+// Items are boxed on the way in and unboxed on the way out.
+
+public class UnboxInt implements IntQuery {
+
+	private final Query<Integer,Integer> q;
+	private IntSink downstream;
+	private final Sink<Integer> unboxing = new Sink<Integer>() {
+		@Override
+		public void next(Integer item) {
+			downstream.next(item);
+		}
+		@Override
+		public void end() {
+			downstream.end();
+		}
+	};
+
+	public UnboxInt(Query<Integer,Integer> q) {
+		this.q = q;
+	}
+
+	@Override
+	public void start(IntSink sink) {
+		downstream = sink;
+		q.start(unboxing);
+	}
+
+	@Override
+	public void next(int item, IntSink sink) {
+		downstream = sink;
+		q.next(item, unboxing);
+	}
+
+	@Override
+	public void end(IntSink sink) {
+		downstream = sink;
+		q.end(unboxing);
+	}
+
+}
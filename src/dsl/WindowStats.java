@@ -0,0 +1,40 @@
+package dsl;
+
+// Statistics of the values in one window (see SWindowStats). The
+// statistics that were not requested are NaN.
+//
+// SWindowStats emits the same (mutable) WindowStats for every window,
+// so a sink that keeps the statistics after next() returns should copy
+// them (see copy()).
+
+public final class WindowStats {
+
+	public int count;
+	public double mean;
+	public double stdev; // population standard deviation
+	public double min;
+	public double max;
+
+	public WindowStats(int count, double mean, double stdev, double min, double max) {
+		this.count = count;
+		this.mean = mean;
+		this.stdev = stdev;
+		this.min = min;
+		this.max = max;
+	}
+
+	public WindowStats copy() {
+		return new WindowStats(count, mean, stdev, min, max);
+	}
+
+	public double sum() {
+		return mean * count;
+	}
+
+	@Override
+	public String toString() {
+		return "{ count: " + count + ", mean: " + mean + ", stdev: " + stdev
+			+ ", min: " + min + ", max: " + max + " }";
+	}
+
+}
@@ -0,0 +1,10 @@
+package dsl;
+
+// Read-only view of the items of a window: get(0) is the oldest item
+// and get(size()-1) the newest. A view is only valid for the duration of
+// the call that receives it (it is reused for the next window).
+
+public interface WindowView<A> {
+	int size();
+	A get(int i);
+}
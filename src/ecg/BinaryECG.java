@@ -0,0 +1,299 @@
+package ecg;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+// Binary columnar format for ECG recordings (extension .ecgb).
+//
+// Layout (little-endian):
+//   header (64 bytes):
+//     0  magic "ECGB"
+//     4  int32   version (1)
+//     8  float64 sampling rate (Hz)
+//     16 int32   number of channels
+//     20 int32   (reserved)
+//     24 int64   timestamp of the first sample
+//     32 int64   number of samples per channel
+//     40 reserved (zeros)
+//   one column per channel: the int16 samples of channel 0, then those
+//   of channel 1, etc.
+// Sample i of every channel has the timestamp start + i.
+//
+// open() maps the file into memory (FileChannel.map), so opening a
+// recording does not read or decode it: the samples are read directly
+// from the page cache when they are accessed. reader(c) returns one
+// channel, samples() all of them with their timestamps.
+
+public class BinaryECG {
+
+	public static final int HEADER_SIZE = 64;
+	private static final int MAGIC = 0x42474345; // "ECGB" (little-endian)
+	private static final int VERSION = 1;
+
+	public final double samplingRate;
+	public final int channels;
+	public final long start; // timestamp of the first sample
+	public final int samples; // per channel
+	private final ByteBuffer data; // the mapped file
+
+	private BinaryECG(ByteBuffer data) {
+		this.data = data.order(ByteOrder.LITTLE_ENDIAN);
+		if (data.capacity() < HEADER_SIZE || data.getInt(0) != MAGIC) {
+			throw new IllegalArgumentException("not an ECGB file");
+		}
+		if (data.getInt(4) != VERSION) {
+			throw new IllegalArgumentException("unsupported ECGB version " + data.getInt(4));
+		}
+		this.samplingRate = data.getDouble(8);
+		this.channels = data.getInt(16);
+		this.start = data.getLong(24);
+		long n = data.getLong(32);
+		// (the size check is divided out, so a huge n cannot overflow)
+		if (channels < 1 || n < 0 || n > (data.capacity() - HEADER_SIZE) / 2 / channels) {
+			throw new IllegalArgumentException("corrupted ECGB header");
+		}
+		this.samples = (int) n;
+	}
+
+	public static BinaryECG open(String file) throws IOException {
+		try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("ECGB files are limited to 2 GB: " + file);
+			}
+			MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			return new BinaryECG(map);
+		}
+	}
+
+	// The samples of channel c (read-only view of the mapped file).
+	public ShortBuffer channel(int c) {
+		if (c < 0 || c >= channels) {
+			throw new IndexOutOfBoundsException(c);
+		}
+		int offset = HEADER_SIZE + 2 * samples * c;
+		return data.duplicate().order(ByteOrder.LITTLE_ENDIAN)
+			.position(offset).limit(offset + 2 * samples)
+			.slice().order(ByteOrder.LITTLE_ENDIAN)
+			.asShortBuffer().asReadOnlyBuffer();
+	}
+
+	// The samples of channel c as a stream (e.g., for Q.execute).
+	public Reader reader(int c) {
+		return new Reader(channel(c));
+	}
+
+	// All the channels, with the timestamps start, start + 1, ...
+	public SampleSource samples() {
+		return new SampleReader();
+	}
+
+	private class SampleReader implements SampleSource {
+
+		private final ShortBuffer[] columns;
+		private final Sample sample;
+		private int i; // next sample
+
+		private SampleReader() {
+			columns = new ShortBuffer[channels];
+			for (int c=0; c<channels; c++) {
+				columns[c] = channel(c);
+			}
+			sample = new Sample(channels);
+		}
+
+		@Override
+		public int channels() {
+			return channels;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return i < samples;
+		}
+
+		@Override
+		public Sample next() {
+			if (i >= samples) {
+				throw new NoSuchElementException();
+			}
+			sample.ts = start + i;
+			for (int c=0; c<channels; c++) {
+				sample.v[c] = columns[c].get(i);
+			}
+			i += 1;
+			return sample;
+		}
+
+		@Override
+		public int fill(SampleBatch batch) {
+			if (batch.channels.length != channels) {
+				throw new IllegalArgumentException("the batch should have " + channels + " channels");
+			}
+			int n = Math.min(batch.capacity(), samples - i);
+			for (int j=0; j<n; j++) {
+				batch.ts[j] = start + i + j;
+			}
+			for (int c=0; c<channels; c++) {
+				ShortBuffer column = columns[c];
+				int[] dst = batch.channels[c];
+				for (int j=0; j<n; j++) {
+					dst[j] = column.get(i + j);
+				}
+			}
+			i += n;
+			batch.size = n;
+			return n;
+		}
+
+		@Override
+		public void close() {
+			// the mapping is released by the garbage collector
+		}
+
+	}
+
+	public static class Reader implements IntSource {
+
+		private final ShortBuffer samples;
+
+		private Reader(ShortBuffer samples) {
+			this.samples = samples;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return samples.hasRemaining();
+		}
+
+		@Override
+		public int nextInt() {
+			if (!samples.hasRemaining()) {
+				throw new NoSuchElementException();
+			}
+			return samples.get();
+		}
+
+		@Override
+		public int fill(int[] dst, int off, int len) {
+			int n = Math.min(len, samples.remaining());
+			int p = samples.position();
+			for (int i=0; i<n; i++) {
+				dst[off + i] = samples.get(p + i);
+			}
+			samples.position(p + n);
+			return n;
+		}
+
+		@Override
+		public void close() {
+			// the mapping is released by the garbage collector
+		}
+
+	}
+
+	// Writes the channels (each given as an int array of the same length)
+	// to an ECGB file.
+	public static void write(String file, double samplingRate, long start,
+							 int[]... channels) throws IOException
+	{
+		if (channels.length < 1) {
+			throw new IllegalArgumentException("at least one channel is needed");
+		}
+		int n = channels[0].length;
+		// everything is checked before the file is touched, so a bad
+		// sample does not leave a truncated file behind
+		for (int[] channel : channels) {
+			if (channel.length != n) {
+				throw new IllegalArgumentException("channels should have the same length");
+			}
+			for (int v : channel) {
+				if (v < Short.MIN_VALUE || v > Short.MAX_VALUE) {
+					throw new IllegalArgumentException("sample out of the int16 range: " + v);
+				}
+			}
+		}
+		long size = HEADER_SIZE + 2L * n * channels.length;
+		try (FileChannel out = FileChannel.open(Paths.get(file), StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ,
+				StandardOpenOption.WRITE))
+		{
+			MappedByteBuffer map = out.map(FileChannel.MapMode.READ_WRITE, 0, size);
+			map.order(ByteOrder.LITTLE_ENDIAN);
+			map.putInt(0, MAGIC);
+			map.putInt(4, VERSION);
+			map.putDouble(8, samplingRate);
+			map.putInt(16, channels.length);
+			map.putLong(24, start);
+			map.putLong(32, n);
+			map.position(HEADER_SIZE);
+			for (int[] channel : channels) {
+				for (int v : channel) {
+					map.putShort((short) v);
+				}
+			}
+			map.force();
+		}
+	}
+
+	// Converts a CSV file "ts,ch0,ch1,..." to an ECGB file. The format
+	// has no timestamp column, so the timestamps of the CSV file must
+	// be contiguous (start, start + 1, ...): a file with gaps or
+	// duplicates is rejected (before the ECGB file is written).
+	public static void convert(String csvFile, String file, double samplingRate)
+		throws IOException
+	{
+		try (CsvSampleReader reader = new CsvSampleReader(csvFile)) {
+			SampleBatch batch = new SampleBatch(reader.channels(), 1 << 16);
+			int[][] channels = new int[reader.channels()][1 << 16];
+			long start = 0;
+			int n = 0;
+			while (reader.fill(batch) > 0) {
+				if (n == 0) {
+					start = batch.ts[0];
+				}
+				for (int j=0; j<batch.size; j++) {
+					if (batch.ts[j] != start + n + j) {
+						throw new IllegalArgumentException(
+							"timestamps are not contiguous in " + csvFile + ": sample " + (n + j)
+							+ " has timestamp " + batch.ts[j] + " instead of " + (start + n + j)
+						);
+					}
+				}
+				if (n + batch.size > channels[0].length) {
+					for (int c=0; c<channels.length; c++) {
+						channels[c] = Arrays.copyOf(channels[c], 2 * channels[c].length);
+					}
+				}
+				for (int c=0; c<channels.length; c++) {
+					System.arraycopy(batch.channels[c], 0, channels[c], n, batch.size);
+				}
+				n += batch.size;
+			}
+			for (int c=0; c<channels.length; c++) {
+				channels[c] = Arrays.copyOf(channels[c], n);
+			}
+			write(file, samplingRate, start, channels);
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.out.println("usage: java ecg.BinaryECG <in.csv> <out.ecgb> [sampling rate]");
+			return;
+		}
+		double rate = args.length > 2 ? Double.parseDouble(args[2]) : 360.0;
+		convert(args[0], args[1], rate);
+		BinaryECG ecg = open(args[1]);
+		System.out.println(args[1] + ": " + ecg.channels + " channels, "
+			+ ecg.samples + " samples at " + ecg.samplingRate + " Hz");
+	}
+
+}
@@ -0,0 +1,84 @@
+package ecg;
+
+import java.io.IOException;
+import java.util.NoSuchElementException;
+
+// Reader for ECG files in the format "ts,ch0,ch1" (one sample per line)
+// that returns one column (by default ch0, like IteratorECG).
+//
+// The file is read through a FileChannel in large blocks, and the
+// integers are decoded directly from the bytes (see CsvScanner): no
+// String or other object is created per sample. Besides the iterator
+// methods, fill() reads many samples at once into an int array. A
+// malformed value throws a NumberFormatException.
+//
+// The channel is closed at the end of the file (or by close()).
+
+public class CsvReaderECG implements IntSource {
+
+	private final CsvScanner scanner;
+	private final int column;
+	private boolean ready; // value holds the next sample (for hasNext)
+	private int value;
+
+	public CsvReaderECG(String file) throws IOException {
+		this(file, 1);
+	}
+
+	public CsvReaderECG(String file, int column) throws IOException {
+		if (column < 0) {
+			throw new IllegalArgumentException("column should be >= 0");
+		}
+		this.scanner = new CsvScanner(file);
+		this.column = column;
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (!ready) {
+			ready = parseNext();
+		}
+		return ready;
+	}
+
+	@Override
+	public int nextInt() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		ready = false;
+		return value;
+	}
+
+	@Override
+	public int fill(int[] dst, int off, int len) {
+		int n = 0;
+		if (ready && len > 0) {
+			dst[off] = value;
+			ready = false;
+			n = 1;
+		}
+		while (n < len && parseNext()) {
+			dst[off + n] = value;
+			n += 1;
+		}
+		return n;
+	}
+
+	@Override
+	public void close() {
+		scanner.close();
+	}
+
+	// Parses the next line into value. Returns false at the end of the
+	// file.
+	private boolean parseNext() {
+		if (!scanner.nextLine()) {
+			return false;
+		}
+		scanner.skipFields(column);
+		value = scanner.nextInt(column);
+		return true;
+	}
+
+}
@@ -0,0 +1,110 @@
+package ecg;
+
+import java.io.IOException;
+import java.util.NoSuchElementException;
+
+// Reader for ECG files in the format "ts,ch0,ch1,..." that returns the
+// timestamp and all the channels of every line (see CsvReaderECG for a
+// single column). The number of channels is that of the first line.
+//
+// Like CsvReaderECG, the file is read in large blocks and the integers
+// are decoded directly from the bytes (see CsvScanner). next() returns
+// the same Sample for all the lines, and fill() decodes a block of lines
+// into the columns of a SampleBatch.
+//
+// The channel is closed at the end of the file (or by close()).
+
+public class CsvSampleReader implements SampleSource {
+
+	private final CsvScanner scanner;
+	private final int channels;
+	private boolean first; // the current line of the scanner is not parsed yet
+	private boolean ready; // the next line is in ts and values (for hasNext)
+	private long ts;
+	private final int[] values;
+	private final Sample sample;
+
+	public CsvSampleReader(String file) throws IOException {
+		this.scanner = new CsvScanner(file);
+		this.first = scanner.nextLine();
+		this.channels = first ? scanner.fields() - 1 : 0;
+		if (channels < 1) {
+			scanner.close();
+			throw new IllegalArgumentException("no channels in " + file);
+		}
+		this.values = new int[channels];
+		this.sample = new Sample(channels);
+	}
+
+	@Override
+	public int channels() {
+		return channels;
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (!ready) {
+			ready = parseNext();
+		}
+		return ready;
+	}
+
+	@Override
+	public Sample next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		ready = false;
+		sample.ts = ts;
+		System.arraycopy(values, 0, sample.v, 0, channels);
+		return sample;
+	}
+
+	@Override
+	public int fill(SampleBatch batch) {
+		if (batch.channels.length != channels) {
+			throw new IllegalArgumentException("the batch should have " + channels + " channels");
+		}
+		int capacity = batch.capacity();
+		int n = 0;
+		if (ready) {
+			copy(batch, 0);
+			ready = false;
+			n = 1;
+		}
+		while (n < capacity && parseNext()) {
+			copy(batch, n);
+			n += 1;
+		}
+		batch.size = n;
+		return n;
+	}
+
+	private void copy(SampleBatch batch, int i) {
+		batch.ts[i] = ts;
+		for (int c=0; c<channels; c++) {
+			batch.channels[c][i] = values[c];
+		}
+	}
+
+	@Override
+	public void close() {
+		scanner.close();
+	}
+
+	// Parses the next line into ts and values. Returns false at the end
+	// of the file.
+	private boolean parseNext() {
+		if (first) {
+			first = false;
+		} else if (!scanner.nextLine()) {
+			return false;
+		}
+		ts = scanner.nextLong(0);
+		for (int c=0; c<channels; c++) {
+			values[c] = scanner.nextInt(c + 1);
+		}
+		return true;
+	}
+
+}
@@ -0,0 +1,188 @@
+package ecg;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+// Line scanner for the CSV readers (CsvReaderECG, CsvSampleReader).
+//
+// The file is read through a FileChannel in large blocks. nextLine()
+// moves to the next non-empty line (LF or CRLF line endings), which is
+// always complete in the buffer (the buffer grows for longer lines).
+// The fields of the line are then read from left to right with
+// skipFields(), nextInt() and nextLong(), which decode the integers
+// directly from the bytes. A malformed field (missing, empty, not an
+// integer, or out of range) throws a NumberFormatException.
+//
+// The channel is closed at the end of the file (or by close()).
+
+final class CsvScanner implements AutoCloseable {
+
+	private static final int BLOCK_SIZE = 1 << 16;
+
+	private final FileChannel channel;
+	private byte[] buf;
+	private ByteBuffer byteBuffer; // wraps buf
+	private int pos; // start of the next line
+	private int limit; // end of the valid bytes in buf
+	private boolean eof; // the rest of the file is in buf[pos, limit)
+	private int end; // end of the current line (without the line ending)
+	private int cursor; // next field of the current line (> end: none)
+
+	CsvScanner(String file) throws IOException {
+		this.channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ);
+		this.buf = new byte[BLOCK_SIZE];
+		this.byteBuffer = ByteBuffer.wrap(buf);
+	}
+
+	// Moves to the next non-empty line. Returns false at the end of the
+	// file.
+	boolean nextLine() {
+		int scanned = 0; // bytes after pos without a line feed
+		while (true) {
+			byte[] b = buf;
+			int p = pos + scanned;
+			int lim = limit;
+			while (p < lim && b[p] != '\n') {
+				p += 1;
+			}
+			if (p == lim && !eof) {
+				scanned = p - pos;
+				refill();
+				continue;
+			}
+			if (p == pos && p == lim) {
+				close();
+				return false;
+			}
+			int start = pos;
+			int e = p;
+			pos = p < lim ? p + 1 : p;
+			if (e > start && b[e - 1] == '\r') {
+				e -= 1;
+			}
+			if (e > start) {
+				end = e;
+				cursor = start;
+				return true;
+			}
+			scanned = 0; // empty line
+		}
+	}
+
+	// Number of fields of the current line.
+	int fields() {
+		int n = 1;
+		for (int p=cursor; p<end; p++) {
+			if (buf[p] == ',') {
+				n += 1;
+			}
+		}
+		return n;
+	}
+
+	// Skips the next n fields of the current line.
+	void skipFields(int n) {
+		byte[] b = buf;
+		int p = cursor;
+		for (int i=0; i<n; i++) {
+			while (p < end && b[p] != ',') {
+				p += 1;
+			}
+			if (p >= end) {
+				throw new NumberFormatException("missing column " + (i + 1));
+			}
+			p += 1;
+		}
+		cursor = p;
+	}
+
+	// The integer in the next field of the current line ('column' is for
+	// the error messages).
+	int nextInt(int column) {
+		return (int) nextLong(column, Integer.MAX_VALUE / 10, Integer.MAX_VALUE % 10);
+	}
+
+	long nextLong(int column) {
+		return nextLong(column, Long.MAX_VALUE / 10, (int) (Long.MAX_VALUE % 10));
+	}
+
+	// Decodes the next field as an integer with absolute value <= max,
+	// given as max / 10 and max % 10.
+	private long nextLong(int column, long maxDiv10, int maxMod10) {
+		byte[] b = buf;
+		int p = cursor;
+		int e = end;
+		if (p > e) {
+			throw new NumberFormatException("missing column " + column);
+		}
+		boolean negative = false;
+		if (p < e && (b[p] == '-' || b[p] == '+')) {
+			negative = b[p] == '-';
+			p += 1;
+		}
+		int digitsStart = p;
+		long v = 0;
+		while (p < e) {
+			int d = b[p] - '0';
+			if (d < 0 || d > 9) {
+				break;
+			}
+			if (v >= maxDiv10 && (v > maxDiv10 || d > maxMod10)) {
+				throw new NumberFormatException("integer overflow in column " + column);
+			}
+			v = 10 * v + d;
+			p += 1;
+		}
+		if (p == digitsStart) {
+			throw new NumberFormatException("no integer in column " + column);
+		}
+		if (p < e && b[p] != ',') {
+			throw new NumberFormatException("invalid integer in column " + column);
+		}
+		cursor = p + 1; // after the separator (> end at the end of the line)
+		return negative ? -v : v;
+	}
+
+	@Override
+	public void close() {
+		try {
+			channel.close();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	// Moves the unscanned bytes to the front of the buffer and reads the
+	// next block of the file after them.
+	private void refill() {
+		int rest = limit - pos;
+		if (rest == buf.length) { // a line longer than the buffer
+			buf = Arrays.copyOf(buf, 2 * buf.length);
+			byteBuffer = ByteBuffer.wrap(buf);
+		} else {
+			System.arraycopy(buf, pos, buf, 0, rest);
+		}
+		pos = 0;
+		limit = rest;
+		byteBuffer.limit(buf.length);
+		byteBuffer.position(limit);
+		try {
+			while (byteBuffer.hasRemaining()) {
+				int n = channel.read(byteBuffer);
+				if (n < 0) {
+					eof = true;
+					break;
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		limit = byteBuffer.position();
+	}
+
+}
@@ -1,6 +1,6 @@
 package ecg;
 
-import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.util.Iterator;
 
 public class Data {
@@ -12,10 +12,40 @@ public class Data {
 		// nothing to do
 	}
 
-	public static Iterator<Integer> ecgStream(String file) {
+	// Channel 0 of a CSV file, of a binary file (see BinaryECG) if the
+	// name ends with ".ecgb", or of an MIT-BIH record (see MitBihRecord)
+	// if the name ends with ".hea".
+	public static IntSource ecgStream(String file) {
 		try {
-			return new IteratorECG(PATH + file);
-		} catch (FileNotFoundException e) {
+			if (file.endsWith(".ecgb")) {
+				return BinaryECG.open(PATH + file).reader(0);
+			}
+			if (file.endsWith(".hea")) {
+				return MitBihRecord.open(PATH + file).reader(0);
+			}
+			return new CsvReaderECG(PATH + file);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+
+		return null;
+	}
+
+	// ecgStream read ahead on a background thread (see PrefetchReader).
+	public static PrefetchReader ecgStreamPrefetch(String file) {
+		IntSource source = ecgStream(file);
+		return source == null ? null : new PrefetchReader(source);
+	}
+
+	// The timestamps and all the channels of a CSV file, or of a binary
+	// file if the name ends with ".ecgb".
+	public static SampleSource ecgSamples(String file) {
+		try {
+			if (file.endsWith(".ecgb")) {
+				return BinaryECG.open(PATH + file).samples();
+			}
+			return new CsvSampleReader(PATH + file);
+		} catch (IOException e) {
 			e.printStackTrace();
 		}
 
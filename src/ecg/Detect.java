@@ -1,9 +1,8 @@
 package ecg;
 
-import java.util.ArrayDeque;
-import java.util.Deque;
-
+import dsl.Q;
 import dsl.Query;
+import dsl.SLastCount;
 import dsl.Sink;
 
 // The detection algorithm (decision rule) that we described in class
@@ -27,63 +26,65 @@ public class Detect implements Query<VTL,Long> {
 	
 	
 	private long lastPeakTs;
-    private final VTL[] window;
-    private int windowCount;
+	// the last 41 samples: the candidate (20 samples back), the 20
+	// samples before it, and the next 20 samples (circular buffer)
+	private final VTL[] window;
+	private int windowCount;
+	private int indexOldest;
+	// max x[n] over the candidate and the next 20 samples
+	private final Query<VTL,VTL> peakQ;
+	private final SLastCount<VTL> peakSink;
 
 	public Detect() {
 		window = new VTL[41];
-        windowCount = 0;
-		
+		windowCount = 0;
+		indexOldest = 0;
+		peakQ = Q.sWindowArgMax(21, vtl -> vtl.v);
+		peakSink = new SLastCount<>();
 	}
 
 	@Override
 	public void start(Sink<Long> sink) {
-        // Ensure the first real candidate always passes the refractory check
+		// Ensure the first real candidate always passes the refractory check
 		lastPeakTs    = Long.MIN_VALUE / 2;
-        windowCount   = 0;
+		windowCount   = 0;
+		indexOldest   = 0;
+		peakQ.start(peakSink);
 	}
 
 	@Override
 	public void next(VTL item, Sink<Long> sink) {
-		 // add the new sample into window
-		 window[windowCount++] = item;
+		// add the new sample into window (replacing the oldest sample)
+		window[(indexOldest + windowCount) % window.length] = item;
+		if (windowCount < window.length) {
+			windowCount += 1;
+		} else {
+			indexOldest = (indexOldest + 1) % window.length;
+		}
+		peakQ.next(item, peakSink);
+
+		//  wait until we have the "current"+"next 40" = 41 samples
+		if (windowCount < window.length) {
+			return;
+		}
 
-		 //  wait until we have the "current"+"next 40" = 41 samples
-		 if (windowCount < window.length) {
-            return;
-        }
- 
-		 
-		 VTL candidate = window[20];
-		 if (windowCount == 41) {
-			System.out.println("DEBUG candidate.ts=" 
-				+ window[0].ts + "  l=" + window[0].l);
-		  }
-		
-		  // No peak should be detected for 72 samples after the last peak.
-        if (candidate.l >= THRESHOLD 
-            && candidate.ts - lastPeakTs >= 72)
-        {
-            // find the peak in the middle of the window
-            VTL peak = candidate;
-            for (int i = 21; i < window.length; i++) {
-                if (window[i].v > peak.v) {
-                    peak = window[i];
-                }
-            }
-            // 6) the real peak
-            sink.next(peak.ts);
-            lastPeakTs = peak.ts;
-        }
+		VTL candidate = window[(indexOldest + 20) % window.length];
 
-		// move the window forward
-		// Remove the first element (the oldest sample)
-        System.arraycopy(window, 1, window, 0, window.length-1);
-        windowCount = window.length-1;
+		// No peak should be detected for 72 samples after the last peak.
+		if (candidate.l >= THRESHOLD 
+			&& candidate.ts - lastPeakTs >= 72)
+		{
+			// the peak in the second half of the window
+			// (the first sample with the largest value)
+			VTL peak = peakSink.last;
+			// 6) the real peak
+			sink.next(peak.ts);
+			lastPeakTs = peak.ts;
+		}
 	}
 
- @Override
- public void end(Sink<Long> sink) {
-	 sink.end();
- }
+	@Override
+	public void end(Sink<Long> sink) {
+		sink.end();
+	}
 }
@@ -0,0 +1,17 @@
+package ecg;
+
+import java.util.PrimitiveIterator;
+
+// One channel of a recording, read one sample at a time or in blocks
+// (e.g., CsvReaderECG, BinaryECG.Reader, MitBihRecord.Reader).
+
+public interface IntSource extends PrimitiveIterator.OfInt, AutoCloseable {
+
+	// Reads up to len samples into dst[off], ..., dst[off+len-1] and
+	// returns their number (less than len only at the end).
+	int fill(int[] dst, int off, int len);
+
+	@Override
+	void close();
+
+}
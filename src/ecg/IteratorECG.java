@@ -2,10 +2,10 @@ package ecg;
 
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.util.Iterator;
+import java.util.PrimitiveIterator;
 import java.util.Scanner;
 
-public class IteratorECG implements Iterator<Integer> {
+public class IteratorECG implements PrimitiveIterator.OfInt {
 
 	public final Scanner scanner;
 
@@ -24,7 +24,7 @@ public class IteratorECG implements Iterator<Integer> {
 	}
 
 	@Override
-	public Integer next() {
+	public int nextInt() {
 		String line = scanner.nextLine();
 		String[] fields = line.split(",");
 		return Integer.parseInt(fields[1]);
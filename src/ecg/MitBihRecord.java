@@ -0,0 +1,320 @@
+package ecg;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+// Record of the MIT-BIH databases (PhysioNet WFDB format): a header file
+// "name.hea" and the signal file it refers to, in "format 212".
+//
+// The header starts with the record line "name nsig freq nsamples ..."
+// followed by one line per signal:
+//   file format gain(baseline)/units resolution zero initial checksum blocksize description
+// (comments start with '#'). Only the first five fields of a signal line
+// are used. The gain defaults to 200 and the baseline to the ADC zero.
+//
+// In format 212 the samples of all signals are interleaved frame by frame
+// (s0 of signal 0, s0 of signal 1, ..., s1 of signal 0, ...), and every
+// two consecutive samples are packed as 12-bit two's complement integers
+// in three bytes:
+//   byte 0: bits 0-7 of the first sample
+//   byte 1: bits 8-11 of the first sample (low nibble), bits 8-11 of the
+//           second sample (high nibble)
+//   byte 2: bits 0-7 of the second sample
+//
+// reader(c) returns the samples of one signal as ADC units, i.e., the
+// values of the CSV exports (e.g., 100.csv). physicalReader(c) converts
+// them to physical units: (v - baseline) / gain.
+
+public class MitBihRecord {
+
+	private static final double DEFAULT_GAIN = 200.0;
+
+	public final String name;
+	public final int signals;
+	public final double samplingRate;
+	public final long samples; // per signal, -1 if not in the header
+	private final Path dat;
+	private final double[] gain;
+	private final int[] baseline;
+	private final String[] description;
+
+	private MitBihRecord(String name, int signals, double samplingRate, long samples,
+						 Path dat, double[] gain, int[] baseline, String[] description)
+	{
+		this.name = name;
+		this.signals = signals;
+		this.samplingRate = samplingRate;
+		this.samples = samples;
+		this.dat = dat;
+		this.gain = gain;
+		this.baseline = baseline;
+		this.description = description;
+	}
+
+	// Parses the header file (e.g., "data/100.hea"). The signal file is
+	// looked up in the same directory.
+	public static MitBihRecord open(String heaFile) throws IOException {
+		Path hea = Paths.get(heaFile);
+		List<String[]> lines = new ArrayList<>();
+		for (String line : Files.readAllLines(hea, StandardCharsets.US_ASCII)) {
+			int comment = line.indexOf('#');
+			if (comment >= 0) {
+				line = line.substring(0, comment);
+			}
+			line = line.trim();
+			if (!line.isEmpty()) {
+				lines.add(line.split("\\s+"));
+			}
+		}
+		if (lines.isEmpty()) {
+			throw new IOException("empty header: " + heaFile);
+		}
+
+		// record line: name[/segments] nsig [freq[/counter freq[(base)]] [nsamples ...]]
+		String[] record = lines.get(0);
+		if (record.length < 2) {
+			throw new IOException("invalid record line: " + String.join(" ", record));
+		}
+		if (record[0].contains("/")) {
+			throw new IOException("multi-segment records are not supported: " + heaFile);
+		}
+		int signals = Integer.parseInt(record[1]);
+		double freq = record.length > 2 ? Double.parseDouble(record[2].split("[/(]")[0]) : 250.0;
+		long samples = record.length > 3 ? Long.parseLong(record[3]) : -1;
+		if (signals < 1 || lines.size() < signals + 1) {
+			throw new IOException("missing signal lines: " + heaFile);
+		}
+
+		// signal lines
+		String file = null;
+		double[] gain = new double[signals];
+		int[] baseline = new int[signals];
+		String[] description = new String[signals];
+		for (int c=0; c<signals; c++) {
+			String[] s = lines.get(c + 1);
+			if (file == null) {
+				file = s[0];
+			} else if (!file.equals(s[0])) {
+				throw new IOException("signals in several files are not supported: " + heaFile);
+			}
+			if (s.length < 2 || !s[1].equals("212")) {
+				throw new IOException("unsupported format (only 212): " + String.join(" ", s));
+			}
+			int zero = s.length > 4 ? Integer.parseInt(s[4]) : 0;
+			gain[c] = DEFAULT_GAIN;
+			baseline[c] = zero;
+			if (s.length > 2) {
+				// gain[(baseline)][/units]
+				String g = s[2].split("/")[0];
+				int open = g.indexOf('(');
+				if (open >= 0) {
+					baseline[c] = Integer.parseInt(g.substring(open + 1, g.indexOf(')')));
+					g = g.substring(0, open);
+				}
+				double value = Double.parseDouble(g);
+				gain[c] = value == 0 ? DEFAULT_GAIN : value;
+			}
+			StringBuilder desc = new StringBuilder();
+			for (int i=8; i<s.length; i++) {
+				desc.append(i > 8 ? " " : "").append(s[i]);
+			}
+			description[c] = desc.toString();
+		}
+
+		Path dat = hea.resolveSibling(file);
+		return new MitBihRecord(record[0], signals, freq, samples, dat, gain, baseline, description);
+	}
+
+	public double gain(int c) {
+		return gain[c];
+	}
+
+	public int baseline(int c) {
+		return baseline[c];
+	}
+
+	public String description(int c) {
+		return description[c];
+	}
+
+	// The samples of signal c in ADC units.
+	public Reader reader(int c) throws IOException {
+		if (c < 0 || c >= signals) {
+			throw new IndexOutOfBoundsException(c);
+		}
+		return new Reader(FileChannel.open(dat, StandardOpenOption.READ), signals, c,
+			samples < 0 ? Long.MAX_VALUE : samples);
+	}
+
+	// The samples of signal c in physical units (e.g., mV).
+	public PrimitiveIterator.OfDouble physicalReader(int c) throws IOException {
+		Reader reader = reader(c);
+		double g = gain[c];
+		int b = baseline[c];
+		return new PrimitiveIterator.OfDouble() {
+
+			@Override
+			public boolean hasNext() {
+				return reader.hasNext();
+			}
+
+			@Override
+			public double nextDouble() {
+				return (reader.nextInt() - b) / g;
+			}
+
+		};
+	}
+
+	// Decodes the signal file block by block. No object is created per
+	// sample; fill() reads many samples at once into an int array.
+	public static class Reader implements IntSource {
+
+		private static final int BLOCK_FRAMES = 1 << 13;
+
+		private final FileChannel channel;
+		private final int signals;
+		private final int signal;
+		private final ByteBuffer bytes; // undecoded bytes
+		private final int[] frames; // decoded samples (all signals)
+		private int pos; // next sample of the signal in frames
+		private int limit; // end of the decoded samples in frames
+		private long remaining; // frames not decoded yet
+		private boolean eof;
+		private boolean carry; // carryValue is the next sample
+		private int carryValue;
+
+		private Reader(FileChannel channel, int signals, int signal, long frames) {
+			this.channel = channel;
+			this.signals = signals;
+			this.signal = signal;
+			int n = BLOCK_FRAMES * signals;
+			this.bytes = ByteBuffer.allocate((n + 1) / 2 * 3);
+			this.bytes.flip();
+			this.frames = new int[n];
+			this.remaining = frames;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return pos < limit || decode();
+		}
+
+		@Override
+		public int nextInt() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			int v = frames[pos];
+			pos += signals;
+			return v;
+		}
+
+		@Override
+		public int fill(int[] dst, int off, int len) {
+			int n = 0;
+			while (n < len && hasNext()) {
+				int[] f = frames;
+				int step = signals;
+				int p = pos;
+				int lim = limit;
+				while (n < len && p < lim) {
+					dst[off + n] = f[p];
+					p += step;
+					n += 1;
+				}
+				pos = p;
+			}
+			return n;
+		}
+
+		@Override
+		public void close() {
+			try {
+				channel.close();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+
+		// Decodes the next block of frames. Returns false at the end.
+		private boolean decode() {
+			if (remaining == 0) {
+				close();
+				return false;
+			}
+			int want = (int) Math.min(BLOCK_FRAMES, remaining) * signals;
+			int c = carry ? 1 : 0;
+			read((want - c + 1) / 2 * 3);
+			ByteBuffer b = bytes;
+			int rest = b.remaining();
+			int available = c + rest / 3 * 2 + (rest % 3 >= 2 ? 1 : 0);
+			int n = Math.min(want, available) / signals * signals;
+			if (n == 0) {
+				close();
+				return false;
+			}
+			int[] f = frames;
+			int i = 0;
+			if (carry) {
+				f[i++] = carryValue;
+				carry = false;
+			}
+			while (i < n) {
+				int b0 = b.get() & 0xFF;
+				int b1 = b.get() & 0xFF;
+				f[i] = (((b1 & 0x0F) << 28) >> 20) | b0; // sign-extended 12 bits
+				if (i + 1 == n && !b.hasRemaining()) {
+					break; // the last sample of a file with an odd number of samples
+				}
+				int s1 = (((b1 & 0xF0) << 24) >> 20) | (b.get() & 0xFF);
+				if (i + 1 < n) {
+					f[i + 1] = s1;
+				} else {
+					// the second sample of the pair starts the next block
+					carry = true;
+					carryValue = s1;
+				}
+				i += 2;
+			}
+			remaining -= n / signals;
+			pos = signal;
+			limit = n;
+			return true;
+		}
+
+		// Makes sure that (at least) len bytes are in the buffer, unless the
+		// file ends before.
+		private void read(int len) {
+			ByteBuffer b = bytes;
+			if (b.remaining() >= len || eof) {
+				return;
+			}
+			b.compact();
+			try {
+				while (b.position() < len) {
+					if (channel.read(b) < 0) {
+						eof = true;
+						break;
+					}
+				}
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			b.flip();
+		}
+
+	}
+
+}
@@ -1,9 +1,9 @@
 // File: ecg/PeakDetection.java
 package ecg;
 
+import dsl.IntToDoubleQuery;
 import dsl.Q;
 import dsl.Query;
-import dsl.Sink;
 import dsl.S;
 import utils.functions.Func2;
 
@@ -17,54 +17,38 @@ public class PeakDetection {
      *  4) sum sqrt(1 + d^2) over a 41-sample window
      */
     public static Query<Integer,Double> qLength() {
-        return new Query<>() {
-            private final double[] xbuf = new double[5];
-            private int xpos = 0, xcnt = 0;
-            private final double[] ybuf = new double[3];
-            private int ypos = 0, ycnt = 0;
-            private final double[] dbuf = new double[41];
-            private int dpos = 0, dcnt = 0;
-
-            @Override
-            public void start(Sink<Double> sink) {
-                xpos = xcnt = ypos = ycnt = dpos = dcnt = 0;
-            }
-
-            @Override
-            public void next(Integer raw, Sink<Double> sink) {
-                // 1) adjust
-                double x = raw - 1024.0;
-                xbuf[xpos] = x;
-                xpos = (xpos + 1) % 5;
-                if (xcnt < 5) { xcnt++; return; }
-
-                // 2) smooth
-                double sx = 0;
-                for (double v : xbuf) sx += v;
-                double y = sx / 5.0;
-                ybuf[ypos] = y;
-                ypos = (ypos + 1) % 3;
-                if (ycnt < 3) { ycnt++; return; }
-
-                // 3) derivative
-                int newest = (ypos + 2) % 3;
-                int oldest2 = ypos;
-                double d = (ybuf[newest] - ybuf[oldest2]) / 2.0;
-                dbuf[dpos] = d;
-                dpos = (dpos + 1) % 41;
-                if (dcnt < 41) { dcnt++; return; }
-
-                // 4) curve length
-                double L = 0;
-                for (double dv : dbuf) {
-                    L += Math.sqrt(1.0 + dv * dv);
-                }
-                sink.next(L);
-            }
+        return Q.boxed(qLengthUnboxed());
+    }
 
-            @Override
-            public void end(Sink<Double> sink) { }
-        };
+    /**
+     * qLength without boxing. Every stage is a window over the last
+     * N+1 values, of which only the last N are used: like the original
+     * buffers, each stage emits from its (N+1)-th input on.
+     */
+    public static IntToDoubleQuery qLengthUnboxed() {
+        return Q.intDoublePipeline(
+            // 1) adjust
+            Q.intToDoubleMap(raw -> raw - 1024.0),
+            Q.doublePipeline(
+                // 2) smooth over 5 samples
+                Q.doubleSWindowK(6, x -> {
+                    double sx = 0;
+                    for (int i = 1; i <= 5; i++) sx += x.get(i);
+                    return sx / 5.0;
+                }),
+                // 3) derivative over 2-sample offset
+                Q.doubleSWindowK(4, y -> (y.get(3) - y.get(1)) / 2.0),
+                // 4) curve length over 41 samples
+                Q.doubleSWindowK(42, d -> {
+                    double L = 0;
+                    for (int i = 1; i <= 41; i++) {
+                        double dv = d.get(i);
+                        L += Math.sqrt(1.0 + dv * dv);
+                    }
+                    return L;
+                })
+            )
+        );
     }
 
     /**
@@ -73,6 +57,18 @@ public class PeakDetection {
      *           then run Detect()
      */
     public static Query<Integer,Long> qPeaks() {
+        return qPeaks(false);
+    }
+
+    /**
+     * Same as qPeaks(), but the two branches that build VTL
+     * (timestamps and curve length) run on separate threads.
+     */
+    public static Query<Integer,Long> qPeaksAsync() {
+        return qPeaks(true);
+    }
+
+    private static Query<Integer,Long> qPeaks(boolean async) {
         // 1) scan indices 0,1,2,... over raw stream
         Query<Integer,Long> idxQ = Q.<Integer,Long>scan(
             -1L,
@@ -86,10 +82,10 @@ public class PeakDetection {
         );
 
         // 2) attach curve‐length → VTL
-        Query<Integer,VTL> toVTL = Q.parallel(
-            toVT, qLength(),
-            (Func2<VT,Double,VTL>)(vt, L) -> vt.extendl(L)
-        );
+        Func2<VT,Double,VTL> extend = (vt, L) -> vt.extendl(L);
+        Query<Integer,VTL> toVTL = async
+            ? Q.parallelAsync(toVT, qLength(), extend, 4096)
+            : Q.parallel(toVT, qLength(), extend);
 
         // 3) DEBUG: print every VTL before detection
         Query<Integer,VTL> debugVTL = Q.pipeline(
@@ -109,6 +105,25 @@ public class PeakDetection {
     }
 
 
+    /**
+     * qPeaks over a multi-channel source (see SampleSource): the peaks
+     * of the given channel, with the timestamps of the recording. The
+     * timestamps come with the samples, so no index is computed, and
+     * both branches copy what they need out of the (reused) Sample.
+     */
+    public static Query<Sample,Long> qPeaks(int channel) {
+        Query<Sample,VT> toVT = Q.map(s -> new VT(s.v[channel], s.ts));
+        Query<Sample,Double> length = Q.pipeline(
+            Q.map(s -> s.v[channel]),
+            qLength()
+        );
+        Query<Sample,VTL> toVTL = Q.parallel(
+            toVT, length,
+            (Func2<VT,Double,VTL>)(vt, L) -> vt.extendl(L)
+        );
+        return Q.pipeline(toVTL, new Detect());
+    }
+
     public static void main(String[] args) {
         System.out.println("****************************************");
         System.out.println("***** Algorithm for Peak Detection *****");
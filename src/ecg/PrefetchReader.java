@@ -0,0 +1,179 @@
+package ecg;
+
+import java.util.NoSuchElementException;
+import java.util.concurrent.CancellationException;
+
+import dsl.IntBatchSource;
+import utils.SpscRing;
+
+// Reads an IntSource ahead on a background thread.
+//
+// A fixed set of chunks (int arrays) circulates between two SPSC rings:
+// the worker takes an empty chunk from 'free', fills it from the source
+// and puts it into 'full'; the consumer takes full chunks and returns
+// them to 'free' once they are read. So the worker decodes at most
+// 'chunks' blocks ahead, and no array is allocated after the start.
+//
+// The samples can be read with next() and fill() (copies), or chunk by
+// chunk with nextBatch()/batch(), which hands out the decoded arrays
+// themselves (e.g., to Q.executeBatch). A chunk returned by batch() is
+// reused after the next call.
+//
+// The worker starts in the constructor and closes the source when it is
+// done. close() stops it early. A failure of the source is rethrown
+// (wrapped in an IllegalStateException) by the consumer.
+
+public class PrefetchReader implements IntSource, IntBatchSource {
+
+	private static final class Chunk {
+		final int[] data;
+		int size;
+
+		Chunk(int size) {
+			this.data = new int[size];
+		}
+	}
+
+	private final IntSource source;
+	private final SpscRing<Chunk> full; // worker -> consumer
+	private final SpscRing<Chunk> free; // consumer -> worker
+	private final Thread worker;
+	private volatile Throwable error; // failure on the worker thread
+	private Chunk current; // the chunk being read
+	private int pos; // next sample in current
+	private boolean closed;
+
+	public PrefetchReader(IntSource source, int chunkSize, int chunks) {
+		if (chunkSize < 1) {
+			throw new IllegalArgumentException("chunk size should be >= 1");
+		}
+		if (chunks < 1) {
+			throw new IllegalArgumentException("chunks should be >= 1");
+		}
+		this.source = source;
+		this.full = new SpscRing<>(chunks, 1);
+		this.free = new SpscRing<>(chunks, 1);
+		for (int i=0; i<chunks; i++) {
+			free.put(new Chunk(chunkSize));
+		}
+		this.worker = new Thread(this::produce, "ecg-prefetch");
+		this.worker.setDaemon(true);
+		this.worker.start();
+	}
+
+	public PrefetchReader(IntSource source) {
+		this(source, 4096, 8);
+	}
+
+	private void produce() {
+		try {
+			Chunk chunk;
+			while ((chunk = free.take()) != null) {
+				int n = source.fill(chunk.data, 0, chunk.data.length);
+				if (n == 0) {
+					break;
+				}
+				chunk.size = n;
+				full.put(chunk);
+			}
+		} catch (CancellationException e) {
+			// closed by the consumer
+		} catch (Throwable t) {
+			error = t;
+		} finally {
+			try {
+				source.close();
+			} catch (Throwable t) {
+				if (error == null) {
+					error = t;
+				}
+			}
+			full.close();
+		}
+	}
+
+	// Moves to the next full chunk. Returns false at the end.
+	private boolean advance() {
+		if (closed) {
+			return false;
+		}
+		if (current != null) {
+			free.put(current);
+		}
+		current = full.take();
+		pos = 0;
+		if (current == null) {
+			if (error != null) {
+				throw new IllegalStateException("prefetching failed", error);
+			}
+			return false;
+		}
+		return true;
+	}
+
+	@Override
+	public boolean hasNext() {
+		return (current != null && pos < current.size) || advance();
+	}
+
+	@Override
+	public int nextInt() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		int v = current.data[pos];
+		pos += 1;
+		return v;
+	}
+
+	@Override
+	public int fill(int[] dst, int off, int len) {
+		int n = 0;
+		while (n < len && hasNext()) {
+			int k = Math.min(len - n, current.size - pos);
+			System.arraycopy(current.data, pos, dst, off + n, k);
+			pos += k;
+			n += k;
+		}
+		return n;
+	}
+
+	@Override
+	public int nextBatch() {
+		if (current != null && pos < current.size) {
+			if (pos > 0) {
+				// the rest of a chunk that was partly read with next()
+				int n = current.size - pos;
+				System.arraycopy(current.data, pos, current.data, 0, n);
+				current.size = n;
+			}
+		} else if (!advance()) {
+			return 0;
+		}
+		pos = current.size;
+		return current.size;
+	}
+
+	@Override
+	public int[] batch() {
+		return current.data;
+	}
+
+	// Stops the worker (if it is still running) and waits for it.
+	@Override
+	public void close() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		current = null;
+		free.close();
+		full.cancel();
+		try {
+			worker.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+}
@@ -0,0 +1,27 @@
+package ecg;
+
+import java.util.Arrays;
+
+// One line of a multi-channel recording: the timestamp and the value of
+// every channel.
+//
+// A SampleSource returns the same (mutable) Sample for all the lines, so
+// an operator that needs an item after next() returns should copy the
+// fields it uses (e.g., into a VT).
+
+public class Sample {
+	public long ts;
+	public final int[] v; // v[c] is the value of channel c
+
+	public Sample(int channels) {
+		this.v = new int[channels];
+	}
+
+	@Override
+	public String toString() {
+		String str = "{ ts: " + ts;
+		str += ", v: " + Arrays.toString(v);
+		str += " }";
+		return str;
+	}
+}
@@ -0,0 +1,33 @@
+package ecg;
+
+// A block of samples of a multi-channel recording, as one array per
+// column (struct of arrays): the timestamp of sample i is ts[i] and its
+// value in channel c is channels[c][i], for 0 <= i < size.
+//
+// A batch is filled by SampleSource.fill() and can be reused for the
+// next block.
+
+public class SampleBatch {
+	public final long[] ts;
+	public final int[][] channels;
+	public int size;
+
+	public SampleBatch(int channels, int capacity) {
+		if (channels < 1) {
+			throw new IllegalArgumentException("channels should be >= 1");
+		}
+		if (capacity < 1) {
+			throw new IllegalArgumentException("capacity should be >= 1");
+		}
+		this.ts = new long[capacity];
+		this.channels = new int[channels][capacity];
+	}
+
+	public int capacity() {
+		return ts.length;
+	}
+
+	public int[] channel(int c) {
+		return channels[c];
+	}
+}
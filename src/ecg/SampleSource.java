@@ -0,0 +1,20 @@
+package ecg;
+
+import java.util.Iterator;
+
+// A multi-channel recording read one line at a time (next() returns a
+// reused Sample) or in blocks (fill()). Both can be mixed.
+
+public interface SampleSource extends Iterator<Sample>, AutoCloseable {
+
+	// number of channels (the length of Sample.v)
+	int channels();
+
+	// Reads up to batch.capacity() samples into the batch, sets batch.size
+	// and returns it (less than the capacity only at the end).
+	int fill(SampleBatch batch);
+
+	@Override
+	void close();
+
+}
@@ -0,0 +1,64 @@
+package ecg;
+
+import java.text.DecimalFormat;
+import java.util.List;
+
+import dsl.Q;
+import dsl.Query;
+import dsl.Sink;
+import dsl.StreamExecutor;
+
+// Many independent ECG streams (one per bed) served by one JVM.
+// Every bed replays 100.csv through the curve length transform and
+// reports the average curve length when its stream ends.
+
+public class Ward {
+
+	public static void main(String[] args) throws InterruptedException {
+		System.out.println("*****************************************");
+		System.out.println("***** Multi-stream ECG (whole ward) *****");
+		System.out.println("*****************************************");
+		System.out.println();
+
+		int nBeds = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+		// one micro-batch = one second of ECG at 360 Hz
+		StreamExecutor executor = new StreamExecutor(360);
+
+		double[] avgLength = new double[nBeds];
+		long start = System.nanoTime();
+		for (int i=0; i<nBeds; i++) {
+			int bed = i;
+			Query<Integer,Double> q = TrainModel.qLengthAvg();
+			Sink<Double> sink = new Sink<Double>() {
+				@Override
+				public void next(Double item) {
+					avgLength[bed] = item;
+				}
+				@Override
+				public void end() {
+					// nothing to do
+				}
+			};
+			executor.submit("bed-" + bed, Data.ecgStream("100.csv"), q, sink);
+		}
+		executor.awaitAll();
+		long end = System.nanoTime();
+		executor.shutdown();
+
+		List<StreamExecutor.Stats> stats = executor.stats();
+		long items = 0;
+		double maxLag = 0.0;
+		for (StreamExecutor.Stats s : stats) {
+			items += s.items();
+			maxLag = Math.max(maxLag, s.maxLagMsec());
+		}
+		DecimalFormat formatter = new DecimalFormat("#,###");
+		System.out.println("beds = " + nBeds);
+		System.out.println("average curve length (bed 0) = " + avgLength[0]);
+		System.out.println(stats.get(0));
+		System.out.println("max lag = " + maxLag + " msec");
+		long throughput = (items * 1000L * 1000 * 1000) / (end - start);
+		System.out.println("total throughput = " + formatter.format(throughput) + " samples/sec");
+	}
+
+}
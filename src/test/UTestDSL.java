@@ -2,12 +2,23 @@ package test;
 
 import static org.junit.Assert.*;
 
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
 
 import org.junit.Before;
 import org.junit.Test;
 
 import dsl.*;
+import utils.DoubleRing;
+import utils.IntRing;
+import utils.LongRing;
 import utils.Or;
 
 public class UTestDSL {
@@ -443,4 +454,1215 @@ public class UTestDSL {
 		}
 	}
 
-}
\ No newline at end of file
+	@Test
+	public void testWindowK() {
+		System.out.println("***** Test Window K *****");
+
+		// same as sWindow3
+		Query<Integer,Integer> q1 = Q.sWindow3((x, y, z) -> x - 2*y + z);
+		Query<Integer,Integer> q2 = Q.sWindowK(3, w -> w.get(0) - 2*w.get(1) + w.get(2));
+		SCollector<Integer> sink1 = new SCollector<>();
+		SCollector<Integer> sink2 = new SCollector<>();
+		Q.execute(Q.intStream(50), Q.pipeline(Q.map(x -> x*x), q1), sink1);
+		Q.execute(Q.intStream(50), Q.pipeline(Q.map(x -> x*x), q2), sink2);
+		assertEquals(48, sink2.list.size());
+		assertEquals(sink1.list, sink2.list);
+
+		// sum and difference over k items: int (batch) and double versions
+		int n = 100;
+		for (int k=1; k<=7; k++) {
+			final int kk = k;
+			IntQuery qInt = Q.intSWindowK(k, w -> {
+				int sum = 0;
+				for (int i=0; i<w.size(); i++) {
+					sum += w.get(i);
+				}
+				return sum;
+			});
+			DoubleQuery qDouble = Q.doubleSWindowK(k, w -> w.get(kk - 1) - w.get(0));
+			SIntLastCount sinkInt = S.intLastCount();
+			SDoubleLastCount sinkDouble = S.doubleLastCount();
+			qInt.start(sinkInt);
+			qDouble.start(sinkDouble);
+			int[] batch = new int[n];
+			double[] dBatch = new double[n];
+			for (int i=0; i<n; i++) {
+				batch[i] = i + 1;
+				dBatch[i] = (i + 1) * 0.5;
+			}
+			qInt.nextBatch(batch, 40, sinkInt);
+			qInt.nextBatch(Arrays.copyOfRange(batch, 40, n), n - 40, sinkInt);
+			for (double x : dBatch) {
+				qDouble.next(x, sinkDouble);
+			}
+			assertEquals(n - k + 1, sinkInt.count);
+			assertEquals(k * (2*n - k + 1) / 2, sinkInt.last);
+			assertEquals(n - k + 1, sinkDouble.count);
+			assertEquals((k - 1) * 0.5, sinkDouble.last, 0.0);
+		}
+	}
+
+	@Test
+	public void testSessionWindow() {
+		System.out.println("***** Test Session Window *****");
+
+		// segments start at the multiples of 10: 1..9, 10..19, ..., 100
+		Query<Integer,String> q1 = Q.sessionWindow(
+			x -> x % 10 == 0, w -> w.get(0) + "-" + w.get(w.size() - 1)
+		);
+		SCollector<String> sink1 = new SCollector<>();
+		Q.execute(Q.intStream(100), q1, sink1);
+		assertEquals(11, sink1.list.size());
+		assertEquals("1-9", sink1.list.get(0));
+		assertEquals("50-59", sink1.list.get(5));
+		assertEquals("100-100", sink1.list.get(10));
+
+		// gaps of more than 3 between timestamps
+		List<Integer> timestamps = List.of(1, 2, 3, 7, 8, 20, 21, 22, 23, 24, 30);
+		Query<Integer,Integer> q2 = Q.sessionWindow(x -> x, 3, w -> w.size());
+		SCollector<Integer> sink2 = new SCollector<>();
+		Q.execute(timestamps.iterator(), q2, sink2);
+		assertEquals(List.of(3, 2, 5, 1), sink2.list);
+
+		// all three conditions, and start() resets the current segment
+		Query<Integer,Integer> q3 = Q.sessionWindow(
+			x -> x == 8, x -> x, 3, 2, w -> w.size()
+		);
+		SCollector<Integer> sink3 = new SCollector<>();
+		q3.start(sink3);
+		q3.next(100, sink3);
+		Q.execute(timestamps.iterator(), q3, sink3);
+		assertEquals(List.of(2, 1, 1, 1, 2, 2, 1, 1), sink3.list);
+	}
+
+	@Test
+	public void testWindowMonoid() {
+		System.out.println("***** Test Window (Monoid) *****");
+
+		Random random = new Random(42);
+		int n = 200;
+		List<Integer> items = new ArrayList<>();
+		for (int i=0; i<n; i++) {
+			items.add(random.nextInt(1000));
+		}
+		for (int w=1; w<=40; w++) {
+			// max has no inverse
+			Query<Integer,Integer> q1 = Q.sWindowNaive(w, Integer.MIN_VALUE, Math::max);
+			Query<Integer,Integer> q2 = Q.sWindow(w, Monoid.of(Integer.MIN_VALUE, Math::max));
+			// concatenation is not commutative
+			Query<Integer,String> q3 = Q.sWindowNaive(w, "", (s, x) -> s + x + ",");
+			Query<Integer,String> q4 = Q.sWindow(w, x -> x + ",", Monoid.of("", String::concat));
+			SLastCount<Integer> sink1 = S.lastCount();
+			SLastCount<Integer> sink2 = S.lastCount();
+			SLastCount<String> sink3 = S.lastCount();
+			SLastCount<String> sink4 = S.lastCount();
+
+			for (int round=0; round<2; round++) { // start() resets the window
+				q1.start(sink1);
+				q2.start(sink2);
+				q3.start(sink3);
+				q4.start(sink4);
+				for (Integer item : items) {
+					q1.next(item, sink1);
+					q2.next(item, sink2);
+					q3.next(item, sink3);
+					q4.next(item, sink4);
+					assertEquals(sink1.count, sink2.count);
+					assertEquals(sink1.last, sink2.last);
+					assertEquals(sink3.count, sink4.count);
+					assertEquals(sink3.last, sink4.last);
+				}
+			}
+			assertEquals(2L * (n - w + 1), sink2.count);
+		}
+	}
+
+	@Test
+	public void testWindowHopping() {
+		System.out.println("***** Test Window (Hopping & Tumbling) *****");
+
+		int n = 100;
+		for (int w=1; w<=12; w++) {
+			for (int slide=1; slide<=15; slide++) {
+				Query<Integer,String> q =
+					Q.hWindow(w, slide, x -> x + ",", Monoid.of("", String::concat));
+				SCollector<String> sink = new SCollector<>();
+				Q.execute(Q.intStream(n), q, sink);
+
+				// window k holds the items k*slide+1, ..., k*slide+w
+				List<String> expected = new ArrayList<>();
+				for (int k=0; k*slide+w<=n; k++) {
+					String str = "";
+					for (int i=k*slide+1; i<=k*slide+w; i++) {
+						str += i + ",";
+					}
+					expected.add(str);
+				}
+				assertEquals(expected, sink.list);
+			}
+		}
+
+		Query<Integer,Integer> q = Q.tWindow(10, Monoid.of(0, Integer::sum));
+		SCollector<Integer> sink = new SCollector<>();
+		Q.execute(Q.intStream(95), q, sink);
+		assertEquals(9, sink.list.size()); // the last 5 items are dropped
+		assertEquals(55, sink.list.get(0).intValue());
+		assertEquals(855, sink.list.get(8).intValue());
+	}
+
+	@Test
+	public void testWindowTime() {
+		System.out.println("***** Test Window (Event Time) *****");
+
+		// items { ts, value } with increasing timestamps and gaps
+		Random random = new Random(11);
+		int n = 500;
+		List<long[]> items = new ArrayList<>();
+		long t = 0;
+		for (int i=0; i<n; i++) {
+			t += random.nextInt(4) == 0 ? 1 + random.nextInt(30) : 1;
+			items.add(new long[] { t, random.nextInt(100) });
+		}
+		long duration = 20;
+		Monoid<Long> max = Monoid.of(Long.MIN_VALUE, Math::max);
+
+		List<Long> expected = new ArrayList<>();
+		for (int i=0; i<n; i++) {
+			long m = Long.MIN_VALUE;
+			for (int j=0; j<=i; j++) {
+				if (items.get(j)[0] > items.get(i)[0] - duration) {
+					m = Math.max(m, items.get(j)[1]);
+				}
+			}
+			expected.add(m);
+		}
+		Query<long[],Long> q1 = Q.sWindowTime(duration, x -> x[0], x -> x[1], max);
+		SCollector<Long> sink1 = new SCollector<>();
+		Q.execute(items.iterator(), q1, sink1);
+		assertEquals(expected, sink1.list);
+
+		// out of order by at most maxDelay: same windows
+		long maxDelay = 10;
+		// (every item arrives with a random delay in [0, maxDelay])
+		List<long[]> shuffled = new ArrayList<>(items);
+		java.util.Map<long[],Long> arrival = new HashMap<>();
+		for (long[] item : items) {
+			arrival.put(item, item[0] + random.nextInt((int) maxDelay + 1));
+		}
+		shuffled.sort(Comparator.comparing(arrival::get));
+		assertNotEquals(items, shuffled);
+		SWindowTime<long[],Long> q2 = new SWindowTime<>(duration, x -> x[0], x -> x[1], max, maxDelay);
+		SCollector<Long> sink2 = new SCollector<>();
+		Q.execute(shuffled.iterator(), q2, sink2);
+		assertEquals(0, q2.late());
+		assertEquals(expected, sink2.list);
+
+		// a late item is dropped
+		SWindowTime<long[],Long> q3 = new SWindowTime<>(duration, x -> x[0], x -> x[1], max, 0);
+		SCollector<Long> sink3 = new SCollector<>();
+		List<long[]> late = List.of(new long[] {10, 1}, new long[] {20, 2}, new long[] {15, 3}, new long[] {25, 4});
+		Q.execute(late.iterator(), q3, sink3);
+		assertEquals(1, q3.late());
+		assertEquals(List.of(1L, 2L, 4L), sink3.list);
+
+		// tumbling: [0,20), [20,40), ... (empty windows are skipped)
+		Query<long[],Long> q4 = Q.tWindowTime(duration, x -> x[0], x -> 1L, Monoid.of(0L, Long::sum), maxDelay);
+		SCollector<Long> sink4 = new SCollector<>();
+		Q.execute(shuffled.iterator(), q4, sink4);
+		TreeMap<Long,Long> counts = new TreeMap<>();
+		for (long[] item : items) {
+			counts.merge(item[0] / duration, 1L, Long::sum);
+		}
+		assertEquals(new ArrayList<>(counts.values()), sink4.list);
+	}
+
+	@Test
+	public void testWindowStats() {
+		System.out.println("***** Test Window (Stats) *****");
+
+		Random random = new Random(5);
+		int n = 400;
+		double[] items = new double[n];
+		for (int i=0; i<n; i++) {
+			items[i] = 1000.0 + random.nextGaussian() * 50.0;
+		}
+		for (int w : new int[] { 1, 2, 3, 10, 41, 100 }) {
+			// the same WindowStats is emitted for every window
+			Query<Double,WindowStats> q = Q.pipeline(Q.sWindowStats(w, x -> x), Q.map(WindowStats::copy));
+			SCollector<WindowStats> sink = new SCollector<>();
+			q.start(sink);
+			for (double x : items) {
+				q.next(x, sink);
+			}
+			q.end(sink);
+			assertEquals(n - w + 1, sink.list.size());
+			for (int j=0; j<=n-w; j++) {
+				double sum = 0.0, min = Double.MAX_VALUE, max = -Double.MAX_VALUE;
+				for (int i=j; i<j+w; i++) {
+					sum += items[i];
+					min = Math.min(min, items[i]);
+					max = Math.max(max, items[i]);
+				}
+				double mean = sum / w;
+				double ss = 0.0;
+				for (int i=j; i<j+w; i++) {
+					ss += (items[i] - mean) * (items[i] - mean);
+				}
+				WindowStats stats = sink.list.get(j);
+				assertEquals(w, stats.count);
+				assertEquals(mean, stats.mean, 1e-9);
+				assertEquals(sum, stats.sum(), 1e-7);
+				assertEquals(Math.sqrt(ss / w), stats.stdev, 1e-6);
+				assertEquals(min, stats.min, 0.0);
+				assertEquals(max, stats.max, 0.0);
+			}
+		}
+
+		// only the requested statistics are computed
+		Query<Double,WindowStats> q =
+			Q.sWindowStats(3, x -> x, SWindowStats.MIN | SWindowStats.MEAN);
+		SLastCount<WindowStats> sink = S.lastCount();
+		Q.execute(List.of(3.0, 1.0, 2.0, 5.0).iterator(), q, sink);
+		assertEquals(2, sink.count);
+		assertEquals(1.0, sink.last.min, 0.0);
+		assertEquals(8.0 / 3, sink.last.mean, 1e-12);
+		assertTrue(Double.isNaN(sink.last.max));
+		assertTrue(Double.isNaN(sink.last.stdev));
+
+		// no allocation per window
+		SCollector<WindowStats> all = new SCollector<>();
+		Q.execute(List.of(3.0, 1.0, 2.0, 5.0).iterator(), Q.sWindowStats(2, x -> x), all);
+		assertEquals(3, all.list.size());
+		assertSame(all.list.get(0), all.list.get(2));
+		assertEquals(3.5, all.list.get(2).mean, 1e-12);
+	}
+
+	@Test
+	public void testWindowQuantile() {
+		System.out.println("***** Test Window (Quantile) *****");
+
+		Random random = new Random(9);
+		int n = 500;
+		double[] items = new double[n];
+		for (int i=0; i<n; i++) {
+			items[i] = random.nextInt(50); // many duplicates
+		}
+		double[] qs = { 0.0, 0.1, 0.25, 0.5, 0.9, 1.0 };
+		for (int w : new int[] { 1, 2, 5, 36, 100 }) {
+			Query<Double,double[]> q = Q.sWindowQuantile(w, qs);
+			SCollector<double[]> sink = new SCollector<>();
+			DoubleQuery median = Q.doubleSWindowMedian(w);
+			double[] medians = new double[n];
+			int[] count = new int[1];
+			DoubleSink medianSink = new DoubleSink() {
+				@Override
+				public void next(double item) { medians[count[0]++] = item; }
+				@Override
+				public void end() { }
+			};
+			for (int round=0; round<2; round++) { // start() resets the window
+				q.start(sink);
+				median.start(medianSink);
+				sink.list.clear();
+				count[0] = 0;
+				for (double x : items) {
+					q.next(x, sink);
+					median.next(x, medianSink);
+				}
+			}
+			assertEquals(n - w + 1, sink.list.size());
+			assertEquals(n - w + 1, count[0]);
+			for (int j=0; j<=n-w; j++) {
+				double[] sorted = Arrays.copyOfRange(items, j, j + w);
+				Arrays.sort(sorted);
+				for (int k=0; k<qs.length; k++) {
+					double pos = qs[k] * (w - 1);
+					int lo = (int) Math.floor(pos);
+					int hi = Math.min(lo + 1, w - 1);
+					double expected = sorted[lo] + (pos - lo) * (sorted[hi] - sorted[lo]);
+					assertEquals(expected, sink.list.get(j)[k], 1e-9);
+				}
+				assertEquals(sink.list.get(j)[3], medians[j], 0.0);
+			}
+		}
+	}
+
+	@Test
+	public void testWindowMinMax() {
+		System.out.println("***** Test Window (Min, Max, ArgMax) *****");
+
+		Random random = new Random(7);
+		int n = 300;
+		int[] items = new int[n];
+		for (int i=0; i<n; i++) {
+			items[i] = random.nextInt(20); // many ties
+		}
+		for (int w=1; w<=40; w++) {
+			IntQuery qMax = Q.sWindowMax(w);
+			IntQuery qMin = Q.sWindowMin(w);
+			Query<int[],int[]> qArg = Q.sWindowArgMax(w, p -> p[1]);
+			SCollector<int[]> sinkArg = new SCollector<>();
+			int[] maxOut = new int[n];
+			int[] minOut = new int[n];
+			int[] count = new int[2];
+			IntSink sinkMax = new IntSink() {
+				@Override
+				public void next(int item) { maxOut[count[0]++] = item; }
+				@Override
+				public void end() { }
+			};
+			IntSink sinkMin = new IntSink() {
+				@Override
+				public void next(int item) { minOut[count[1]++] = item; }
+				@Override
+				public void end() { }
+			};
+			qMax.start(sinkMax);
+			qMin.start(sinkMin);
+			qArg.start(sinkArg);
+			for (int i=0; i<n; i++) {
+				qMax.next(items[i], sinkMax);
+				qMin.next(items[i], sinkMin);
+				qArg.next(new int[] { i, items[i] }, sinkArg);
+			}
+			assertEquals(n - w + 1, count[0]);
+			assertEquals(n - w + 1, count[1]);
+			assertEquals(n - w + 1, sinkArg.list.size());
+			for (int j=0; j<=n-w; j++) { // window items[j..j+w-1]
+				int max = Integer.MIN_VALUE, min = Integer.MAX_VALUE, arg = -1;
+				for (int i=j; i<j+w; i++) {
+					if (items[i] > max) {
+						max = items[i];
+						arg = i; // the oldest maximum
+					}
+					min = Math.min(min, items[i]);
+				}
+				assertEquals(max, maxOut[j]);
+				assertEquals(min, minOut[j]);
+				assertEquals(arg, sinkArg.list.get(j)[0]);
+			}
+		}
+
+		// the batch protocol gives the same results
+		int[] batch = new int[n];
+		for (int i=0; i<n; i++) {
+			batch[i] = random.nextInt(1000);
+		}
+		SIntLastCount sink1 = S.intLastCount();
+		SIntLastCount sink2 = S.intLastCount();
+		IntQuery q1 = Q.sWindowMax(17);
+		IntQuery q2 = Q.sWindowMax(17);
+		q1.start(sink1);
+		q2.start(sink2);
+		for (int i=0; i<n; i++) {
+			q1.next(batch[i], sink1);
+		}
+		q2.nextBatch(batch, 100, sink2);
+		q2.nextBatch(Arrays.copyOfRange(batch, 100, n), n - 100, sink2);
+		assertEquals(sink1.count, sink2.count);
+		assertEquals(sink1.last, sink2.last);
+	}
+
+	@Test
+	public void testIntQueries() {
+		System.out.println("***** Test Int Queries *****");
+
+		// same results as the boxed pipeline filter >> map >> scan
+		Query<Integer,Integer> q1 = Q.pipeline(
+			Q.filter(x -> x % 3 != 0), Q.map(x -> 2*x), Q.scan(0, Integer::sum)
+		);
+		SLastCount<Integer> sink1 = S.lastCount();
+
+		IntQuery q2 = Q.intPipeline(
+			Q.intFilter(x -> x % 3 != 0), Q.intMap(x -> 2*x), Q.intScan(0, Integer::sum)
+		);
+		SIntLastCount sink2 = S.intLastCount();
+
+		int n = 1000;
+		q1.start(sink1);
+		q2.start(sink2);
+		for (int i=1; i<=n; i++) {
+			q1.next(i, sink1);
+			q2.next(i, sink2);
+			assertEquals(sink1.count, sink2.count);
+			if (sink1.count > 0) {
+				assertEquals(sink1.last.intValue(), sink2.last);
+			}
+		}
+		q1.end(sink1);
+		q2.end(sink2);
+		assertEquals(sink1.count, sink2.count);
+		assertEquals(sink1.last.intValue(), sink2.last);
+	}
+
+	@Test
+	public void testIntFoldAndWindow() {
+		System.out.println("***** Test Int Fold & Window *****");
+
+		IntQuery q1 = Q.intFold(0, Integer::sum);
+		SIntLastCount sink1 = S.intLastCount();
+		Q.execute(Q.intStream(1000), q1, sink1);
+		assertEquals(1, sink1.count);
+		assertEquals(500500, sink1.last);
+
+		for (int w=1; w<10; w++) {
+			Query<Integer,Integer> q2 = Q.sWindowNaive(w, 0, Integer::sum);
+			SLastCount<Integer> sink2 = S.lastCount();
+			IntQuery q3 = Q.intSWindowInv(w, 0, Integer::sum, (x,y) -> x-y);
+			SIntLastCount sink3 = S.intLastCount();
+			Q.execute(Q.intStream(20), q2, sink2);
+			Q.execute(Q.intStream(20), q3, sink3);
+			assertEquals(sink2.count, sink3.count);
+			assertEquals(sink2.last.intValue(), sink3.last);
+		}
+	}
+
+	@Test
+	public void testIntParallel() {
+		System.out.println("***** Test Int Parallel *****");
+
+		IntQuery q1 = Q.intFilter(x -> x % 2 == 1);
+		IntQuery q2 = Q.intFilter(x -> x % 2 == 0);
+		IntQuery q = Q.intParallel(q1, q2, (x,y) -> x + y);
+		SIntLastCount sink = S.intLastCount();
+
+		int n = 1000;
+		q.start(sink);
+		for (int i=1; i<=n; i++) {
+			q.next(i, sink);
+			assertEquals(i/2, sink.count);
+			if (i % 2 == 0) {
+				assertEquals(2*i-1, sink.last);
+			}
+		}
+		q.end(sink);
+		assertEquals(n/2, sink.count);
+	}
+
+	@Test
+	public void testDoubleQueries() {
+		System.out.println("***** Test Double Queries *****");
+
+		IntToDoubleQuery q = Q.intDoublePipeline(
+			Q.intToDoubleMap(x -> x / 2.0),
+			Q.doublePipeline(
+				Q.doubleParallel(Q.doubleMap(x -> 2*x), Q.doubleScan(0.0, Double::sum), Double::sum),
+				Q.doubleSWindowInv(3, 0.0, Double::sum, (x,y) -> x-y),
+				Q.doubleFold(0.0, Math::max)
+			)
+		);
+		Query<Integer,Double> qBoxed = Q.pipeline(
+			Q.map(x -> x / 2.0),
+			Q.parallel(Q.map(x -> 2*x), Q.scan(0.0, Double::sum), Double::sum),
+			Q.sWindowInv(3, 0.0, Double::sum, (x,y) -> x-y),
+			Q.fold(0.0, Math::max)
+		);
+
+		SDoubleLastCount sink1 = S.doubleLastCount();
+		SLastCount<Double> sink2 = S.lastCount();
+		Q.execute(Q.intStream(100), q, sink1);
+		Q.execute(Q.intStream(100), qBoxed, sink2);
+		assertEquals(1, sink1.count);
+		assertEquals(sink2.last, sink1.last, 1e-9);
+	}
+
+	@Test
+	public void testBoxing() {
+		System.out.println("***** Test Boxing Adapters *****");
+
+		Query<Integer,Integer> q1 =
+			Q.pipeline(Q.boxed(Q.intMap(x -> 2*x)), Q.map(x -> x + 1));
+		IntQuery q2 = Q.intPipeline(Q.unboxedInt(q1), Q.intMap(x -> 3*x));
+		Query<Integer,Double> q3 = Q.pipeline(
+			Q.boxed(q2), Q.boxed(Q.unboxedIntToDouble(Q.map(x -> x / 2.0)))
+		);
+		SLastCount<Double> sink = S.lastCount();
+
+		int n = 1000;
+		Q.execute(Q.intStream(n), q3, sink);
+		assertEquals(n, sink.count);
+		assertEquals(3 * (2*n + 1) / 2.0, sink.last, 1e-9);
+	}
+
+	@Test
+	public void testBatch() {
+		System.out.println("***** Test Batch Execution *****");
+
+		int n = 10_000;
+		int[] batchSizes = {1, 7, 64, 4096, 20_000};
+		for (int batchSize : batchSizes) {
+			IntQuery q1 = Q.intPipeline(
+				Q.intFilter(x -> x % 3 != 0),
+				Q.intParallel(Q.intMap(x -> 2*x), Q.intScan(0, Integer::sum), Integer::sum),
+				Q.intSWindowInv(5, 0, Integer::sum, (x,y) -> x-y)
+			);
+			SIntLastCount sink1 = S.intLastCount();
+			Q.execute(Q.intStream(n), q1, sink1);
+
+			IntQuery q2 = Q.intPipeline(
+				Q.intFilter(x -> x % 3 != 0),
+				Q.intParallel(Q.intMap(x -> 2*x), Q.intScan(0, Integer::sum), Integer::sum),
+				// no batch support: falls back to item-at-a-time
+				Q.unboxedInt(Q.sWindowInv(5, 0, Integer::sum, (x,y) -> x-y))
+			);
+			SIntLastCount sink2 = S.intLastCount();
+			Q.executeBatch(Q.intStream(n), q2, sink2, batchSize);
+
+			assertEquals(sink1.count, sink2.count);
+			assertEquals(sink1.last, sink2.last);
+
+			IntToDoubleQuery q3 = Q.intDoublePipeline(
+				Q.intToDoubleMap(x -> x / 4.0),
+				Q.doublePipeline(
+					Q.doubleFilter(x -> x > 10.0),
+					Q.doubleSWindowInv(3, 0.0, Double::sum, (x,y) -> x-y),
+					Q.doubleScan(0.0, Math::max)
+				)
+			);
+			SDoubleLastCount sink3 = S.doubleLastCount();
+			Q.executeBatch(Q.intStream(n), q3, sink3, batchSize);
+			assertEquals(n - 42, sink3.count);
+			assertEquals((3*n - 3) / 4.0, sink3.last, 1e-9);
+		}
+	}
+
+	// Bytes allocated by the current thread while pushing the items
+	// through q (after a warm-up pass over the same items).
+	private static <B> long allocatedBytes(Query<Integer,B> q, Integer[] items) {
+		com.sun.management.ThreadMXBean bean =
+			(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long tid = Thread.currentThread().getId();
+		SLastCount<B> sink = S.lastCount();
+		q.start(sink);
+		for (Integer item : items) {
+			q.next(item, sink);
+		}
+		long before = bean.getThreadAllocatedBytes(tid);
+		for (Integer item : items) {
+			q.next(item, sink);
+		}
+		long after = bean.getThreadAllocatedBytes(tid);
+		return after - before;
+	}
+
+	@Test
+	public void testAllocationFreeWiring() {
+		System.out.println("***** Test Allocation-Free Wiring *****");
+
+		int n = 1_000_000;
+		Integer[] items = new Integer[n];
+		for (int i=0; i<n; i++) {
+			items[i] = i; // boxed once, up front
+		}
+
+		// The operators themselves do not allocate (they pass the same
+		// Integer objects along), so any garbage would come from wiring.
+		Query<Integer,Integer> q1 =
+			Q.pipeline(Q.map(x -> x), Q.map(x -> x), Q.map(x -> x));
+		long bytes1 = allocatedBytes(q1, items);
+		System.out.println("pipeline(map, map, map): " + bytes1 + " bytes");
+		assertTrue(bytes1 < n / 10);
+
+		Query<Integer,Integer> q2 =
+			Q.parallel(Q.map(x -> x), Q.pipeline(Q.id(), Q.map(x -> x)), (x, y) -> x);
+		long bytes2 = allocatedBytes(q2, items);
+		System.out.println("parallel(map, pipeline(id, map)): " + bytes2 + " bytes");
+		assertTrue(bytes2 < n / 10);
+
+		Query<Or<Integer,Integer>,Integer> q3 =
+			Q.pipeline(Q.filter(Or::isLeft), Q.map(Or::getLeft));
+		Query<Integer,Integer> q4 = Q.pipeline(Q.map(x -> x), Q.loop(q3));
+		long bytes4 = allocatedBytes(q4, items);
+		System.out.println("pipeline(map, loop(...)): " + bytes4 + " bytes");
+		// Each item is wrapped twice (Or.inl on the way in, Or.inr on the
+		// feedback path), 24 bytes each; the wiring must not add more.
+		assertTrue(bytes4 < 49L * n);
+	}
+
+	// Check that q and Q.optimize(q) produce the same output stream.
+	private static <B> void assertSameOutput(Query<Integer,B> q, Query<Integer,B> qOpt) {
+		SCollector<B> sink1 = S.collector();
+		SCollector<B> sink2 = S.collector();
+		Q.execute(Q.intStream(1000), q, sink1);
+		Q.execute(Q.intStream(1000), qOpt, sink2);
+		assertEquals(sink1.list, sink2.list);
+	}
+
+	@Test
+	public void testOptimize() {
+		System.out.println("***** Test Optimize *****");
+
+		// filter >> map >> fold becomes a single fold
+		Query<Integer,Long> q1 = Q.pipeline(
+			Q.filter(x -> x % 2 == 0), Q.map(x -> 2*x), Q.fold(0L, (x, y) -> x + y)
+		);
+		Query<Integer,Long> q1Opt = Q.optimize(q1);
+		assertTrue(q1Opt instanceof Fold);
+		assertSameOutput(q1, Q.optimize(q1));
+
+		// map >> id >> map >> scan becomes a single scan
+		Query<Integer,Integer> q2 = Q.pipeline(
+			Q.map(x -> x + 1), Q.id(), Q.map(x -> 3*x), Q.scan(0, Integer::sum)
+		);
+		assertTrue(Q.optimize(q2) instanceof Scan);
+		assertSameOutput(q2, Q.optimize(q2));
+
+		// nested pipelines are flattened
+		Query<Integer,Integer> q3 = Q.pipeline(
+			Q.pipeline(Q.ignore(3), Q.filter(x -> x % 3 != 0)),
+			Q.pipeline(Q.pipeline(Q.ignore(0), Q.filter(x -> x % 5 != 0)), Q.map(x -> x - 1)),
+			Q.pipeline(Q.ignore(2), Q.ignore(4))
+		);
+		assertSameOutput(q3, Q.optimize(q3));
+		Query<Integer,Integer> q3Opt = Q.optimize(q3);
+		assertTrue(q3Opt instanceof Pipeline);
+
+		// stages that cannot be fused are kept, and children of
+		// parallel composition are optimized
+		Query<Integer,Integer> q4 = Q.pipeline(
+			Q.map(x -> x * x),
+			Q.sWindow2((x, y) -> y - x),
+			Q.parallel(Q.pipeline(Q.id(), Q.map(x -> x + 1)), Q.filter(x -> x % 2 == 1), Integer::sum),
+			Q.emit(2, 7)
+		);
+		assertSameOutput(q4, Q.optimize(q4));
+
+		assertTrue(Q.optimize(Q.pipeline(Q.id(), Q.ignore(0))) instanceof Id);
+	}
+
+	@Test
+	public void testPrimitiveRings() {
+		System.out.println("***** Test Primitive Rings *****");
+
+		IntRing ring = new IntRing(5);
+		assertEquals(8, ring.capacity());
+		List<Integer> model = new ArrayList<>();
+		Random random = new Random(3);
+		int next = 0;
+		for (int step=0; step<2000; step++) {
+			int op = random.nextInt(6);
+			if (op <= 1 || model.isEmpty()) {
+				ring.addLast(next);
+				model.add(next);
+				next += 1;
+			} else if (op == 2) {
+				assertEquals(model.remove(0).intValue(), ring.removeFirst());
+			} else if (op == 3) {
+				assertEquals(model.remove(model.size() - 1).intValue(), ring.removeLast());
+			} else if (op == 4) { // bulk append (wraps around, may grow)
+				int len = random.nextInt(7);
+				int[] src = new int[len + 2];
+				for (int i=0; i<len; i++) {
+					src[i + 1] = next;
+					model.add(next);
+					next += 1;
+				}
+				ring.addAll(src, 1, len);
+			} else { // bulk read
+				int[] dst = new int[ring.size() + 1];
+				assertEquals(model.size(), ring.copyTo(dst, 1));
+				for (int i=0; i<model.size(); i++) {
+					assertEquals(model.get(i).intValue(), dst[i + 1]);
+				}
+			}
+			assertEquals(model.size(), ring.size());
+			for (int i=0; i<model.size(); i++) {
+				assertEquals(model.get(i).intValue(), ring.get(i));
+			}
+			if (!model.isEmpty()) {
+				assertEquals(model.get(0).intValue(), ring.first());
+				assertEquals(model.get(model.size() - 1).intValue(), ring.last());
+			}
+			assertEquals(0, ring.capacity() & (ring.capacity() - 1));
+		}
+
+		// a window-sized ring does not grow
+		DoubleRing window = new DoubleRing(41);
+		for (int i=0; i<1000; i++) {
+			if (window.size() == 41) {
+				assertEquals(i - 41, window.removeFirst(), 0.0);
+			}
+			window.addLast(i);
+		}
+		assertEquals(64, window.capacity());
+		LongRing longs = new LongRing(1);
+		longs.addLast(Long.MAX_VALUE);
+		longs.addLast(Long.MIN_VALUE);
+		assertEquals(Long.MAX_VALUE, longs.first());
+		assertEquals(Long.MIN_VALUE, longs.last());
+	}
+
+	@Test
+	public void testSpscRing() throws InterruptedException {
+		System.out.println("***** Test SPSC Ring *****");
+
+		int n = 1_000_000;
+		utils.SpscRing<Integer> ring = new utils.SpscRing<>(100, 8);
+		assertEquals(128, ring.capacity());
+		Thread producer = new Thread(() -> {
+			for (int i=1; i<=n; i++) {
+				ring.put(i);
+			}
+			ring.close();
+		});
+		producer.start();
+		long sum = 0;
+		int expected = 1;
+		Integer item;
+		while ((item = ring.take()) != null) {
+			assertEquals(expected, item.intValue());
+			expected += 1;
+			sum += item;
+		}
+		producer.join();
+		assertTrue(ring.isDrained());
+		assertEquals(((1L+n)*n)/2, sum);
+
+		// items of a batch that is not complete are visible to a parked
+		// consumer while the producer is idle
+		utils.SpscRing<Integer> live = new utils.SpscRing<>(1024, 64);
+		List<Integer> received = java.util.Collections.synchronizedList(new ArrayList<>());
+		Thread consumer = new Thread(() -> {
+			Integer x;
+			while ((x = live.take()) != null) {
+				received.add(x);
+			}
+		});
+		consumer.setDaemon(true);
+		consumer.start();
+		Thread.sleep(50); // the consumer parks
+		for (int i=1; i<=3; i++) {
+			live.put(i);
+		}
+		long deadline = System.nanoTime() + 5_000_000_000L;
+		while (received.size() < 3 && System.nanoTime() < deadline) {
+			Thread.sleep(1);
+		}
+		assertEquals(Arrays.asList(1, 2, 3), received);
+		live.close();
+		consumer.join(5000);
+		assertFalse(consumer.isAlive());
+	}
+
+	@Test
+	public void testPipelineAsync() {
+		System.out.println("***** Test Pipeline (Async) *****");
+
+		int n = 100_000;
+		for (int capacity : new int[] {1, 16, 1024}) {
+			Query<Integer,Integer> q1 = Q.pipeline(
+				Q.filter(x -> x % 3 != 0), Q.emit(3, 7), Q.scan(0, (x, y) -> x ^ y)
+			);
+			Query<Integer,Integer> q2 = Q.pipelineAsync(
+				Q.filter(x -> x % 3 != 0), Q.emit(3, 7), Q.scan(0, (x, y) -> x ^ y),
+				capacity
+			);
+			SCollector<Integer> sink1 = S.collector();
+			SCollector<Integer> sink2 = S.collector();
+			Q.execute(Q.intStream(n), q1, sink1);
+			Q.execute(Q.intStream(n), q2, sink2);
+			assertEquals(sink1.list, sink2.list);
+		}
+
+		// a failing stage is reported on the caller's thread
+		Query<Integer,Integer> q3 = Q.pipelineAsync(
+			Q.id(), Q.map(x -> 100 / (x - 5000)), 64
+		);
+		try {
+			Q.execute(Q.intStream(n), q3, S.lastCount());
+			fail("expected an exception");
+		} catch (IllegalStateException e) {
+			assertTrue(e.getCause() instanceof ArithmeticException);
+		}
+
+		// a failing first stage (on the caller's thread) stops the worker
+		long workers = aliveThreads("dsl-async");
+		Query<Integer,Integer> q4 = Q.pipelineAsync(
+			Q.map(x -> 100 / (x - 5000)), Q.id(), 64
+		);
+		SCollector<Integer> sink4 = S.collector();
+		try {
+			Q.execute(Q.intStream(n), q4, sink4);
+			fail("expected an exception");
+		} catch (ArithmeticException e) {
+			// expected
+		}
+		assertEquals(workers, aliveThreads("dsl-async"));
+		assertTrue(sink4.list.size() < 5000);
+
+		// ... also when it fails in start()
+		Query<Integer,Integer> failing = new Query<Integer,Integer>() {
+			@Override
+			public void start(Sink<Integer> sink) {
+				throw new IllegalArgumentException("start");
+			}
+			@Override
+			public void next(Integer item, Sink<Integer> sink) {
+				sink.next(item);
+			}
+			@Override
+			public void end(Sink<Integer> sink) {
+				sink.end();
+			}
+		};
+		Query<Integer,Integer> q5 = Q.pipelineAsync(failing, Q.id(), 64);
+		try {
+			Q.execute(Q.intStream(n), q5, S.lastCount());
+			fail("expected an exception");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		assertEquals(workers, aliveThreads("dsl-async"));
+	}
+
+	private static long aliveThreads(String name) {
+		return Thread.getAllStackTraces().keySet().stream()
+			.filter(t -> t.isAlive() && t.getName().equals(name))
+			.count();
+	}
+
+	@Test
+	public void testParallelAsync() {
+		System.out.println("***** Test Parallel (Async) *****");
+
+		int n = 100_000;
+		for (int capacity : new int[] {1, 16, 1024}) {
+			// one branch emits far more items than the other one
+			Query<Integer,Integer> q1 = Q.parallel(
+				Q.pipeline(Q.filter(x -> x % 10 == 0), Q.emit(2, 5)),
+				Q.pipeline(Q.dup(), Q.scan(0, Integer::sum)),
+				(x, y) -> 31*x + y
+			);
+			Query<Integer,Integer> q2 = Q.parallelAsync(
+				Q.pipeline(Q.filter(x -> x % 10 == 0), Q.emit(2, 5)),
+				Q.pipeline(Q.dup(), Q.scan(0, Integer::sum)),
+				(x, y) -> 31*x + y,
+				capacity
+			);
+			SCollector<Integer> sink1 = S.collector();
+			SCollector<Integer> sink2 = S.collector();
+			Q.execute(Q.intStream(n), q1, sink1);
+			Q.execute(Q.intStream(n), q2, sink2);
+			assertEquals(n / 10 + 2, sink2.list.size());
+			assertEquals(sink1.list, sink2.list);
+		}
+
+		// a failing branch is reported on the caller's thread
+		Query<Integer,Integer> q3 = Q.parallelAsync(
+			Q.id(), Q.map(x -> 100 / (x - 5000)), Integer::sum, 64
+		);
+		try {
+			Q.execute(Q.intStream(n), q3, S.lastCount());
+			fail("expected an exception");
+		} catch (IllegalStateException e) {
+			assertTrue(e.getCause() instanceof ArithmeticException);
+		}
+		assertEquals(0, aliveThreads("dsl-parallel-1") + aliveThreads("dsl-parallel-2"));
+
+		// the outputs of the fast branch wait in a bounded buffer
+		int capacity = 16;
+		ParallelAsync<Integer,Integer,Integer,Integer> q4 = new ParallelAsync<>(
+			Q.id(),
+			Q.map(x -> {
+				long h = x;
+				for (int i=0; i<200; i++) {
+					h = h * 31 + i;
+				}
+				return (int) (h & 1) + x;
+			}),
+			(x, y) -> y - x,
+			capacity
+		);
+		int[] maxBuffered = new int[1];
+		long[] count = new long[1];
+		Q.execute(Q.intStream(n), q4, new Sink<Integer>() {
+			@Override
+			public void next(Integer item) {
+				assertTrue(item == 0 || item == 1);
+				maxBuffered[0] = Math.max(maxBuffered[0], q4.buffered());
+				count[0] += 1;
+			}
+			@Override
+			public void end() {
+				// nothing to do
+			}
+		});
+		assertEquals(n, count[0]);
+		assertTrue(maxBuffered[0] <= 2 * capacity); // capacity per branch
+
+		// a failing op (on the caller's thread) stops both workers
+		Query<Integer,Integer> q5 = Q.parallelAsync(
+			Q.id(), Q.id(), (x, y) -> 100 / (x - 5000), 64
+		);
+		try {
+			Q.execute(Q.intStream(n), q5, S.lastCount());
+			fail("expected an exception");
+		} catch (ArithmeticException e) {
+			// expected
+		}
+		assertEquals(0, aliveThreads("dsl-parallel-1") + aliveThreads("dsl-parallel-2"));
+	}
+
+	@Test
+	public void testPartition() {
+		System.out.println("***** Test Partition *****");
+
+		int n = 100_000;
+		for (int nShards : new int[] {1, 3, 8}) {
+			// ordered: same output as a single instance of a stateless query
+			Query<Integer,Integer> q1 = Q.pipeline(Q.filter(x -> x % 3 != 0), Q.dup());
+			Query<Integer,Integer> q2 = Q.partitionOrdered(
+				x -> x % 101, nShards, () -> Q.pipeline(Q.filter(x -> x % 3 != 0), Q.dup())
+			);
+			SCollector<Integer> sink1 = S.collector();
+			SCollector<Integer> sink2 = S.collector();
+			Q.execute(Q.intStream(n), q1, sink1);
+			Q.execute(Q.intStream(n), q2, sink2);
+			assertEquals(sink1.list, sink2.list);
+
+			// ordered: outputs of different shards are interleaved in
+			// input order
+			Query<Integer,Long> q3 = Q.partitionOrdered(
+				x -> x % 7, nShards,
+				() -> Q.map(x -> (long) x % 7)
+			);
+			SCollector<Long> sink3 = S.collector();
+			Q.execute(Q.intStream(n), q3, sink3);
+			for (int i=0; i<n; i++) {
+				assertEquals((i + 1) % 7, sink3.list.get(i).longValue());
+			}
+
+			// unordered: every shard counts its items, and emits the count
+			// when the stream ends
+			Query<Integer,Long> q4 = Q.partition(
+				x -> x % 10, nShards, () -> Q.fold(0L, (c, x) -> c + 1)
+			);
+			SCollector<Long> sink4 = S.collector();
+			Q.execute(Q.intStream(n), q4, sink4);
+			assertEquals(nShards, sink4.list.size());
+			long total = 0;
+			for (long c : sink4.list) {
+				total += c;
+			}
+			assertEquals(n, total);
+		}
+
+		// a failing shard is reported on the caller's thread
+		for (boolean ordered : new boolean[] {false, true}) {
+			Query<Integer,Integer> q5 = ordered
+				? Q.partitionOrdered(x -> x % 4, 4, () -> Q.map(x -> 100 / (x - 5000)))
+				: Q.partition(x -> x % 4, 4, () -> Q.map(x -> 100 / (x - 5000)));
+			try {
+				Q.execute(Q.intStream(n), q5, S.lastCount());
+				fail("expected an exception");
+			} catch (IllegalStateException e) {
+				assertTrue(e.getCause() instanceof ArithmeticException);
+			}
+		}
+	}
+
+	@Test
+	public void testStreamExecutor() throws InterruptedException {
+		System.out.println("***** Test Stream Executor *****");
+
+		int nStreams = 1000;
+		int n = 10_000;
+		StreamExecutor executor = new StreamExecutor(4, 256);
+		List<SLastCount<Long>> sinks = new ArrayList<>();
+		List<StreamExecutor.Stats> stats = new ArrayList<>();
+		for (int i=0; i<nStreams; i++) {
+			long k = i;
+			Query<Integer,Long> q = Q.pipeline(Q.map(x -> k * x), Q.fold(0L, Long::sum));
+			SLastCount<Long> sink = new SLastCount<Long>() {
+				@Override
+				public void end() {
+					// do not print for every stream
+				}
+			};
+			sinks.add(sink);
+			stats.add(executor.submit("stream-" + i, Q.intStream(n), q, sink));
+		}
+		executor.awaitAll();
+		executor.shutdown();
+
+		for (int i=0; i<nStreams; i++) {
+			assertEquals(1, sinks.get(i).count);
+			assertEquals(i * (((1L+n)*n)/2), sinks.get(i).last.longValue());
+			assertTrue(stats.get(i).isDone());
+			assertNull(stats.get(i).error());
+			assertEquals(n, stats.get(i).items());
+		}
+		assertEquals(nStreams, executor.stats().size());
+		System.out.println(stats.get(0));
+	}
+
+	@Test
+	public void testStreamExecutorLive() throws InterruptedException {
+		System.out.println("***** Test Stream Executor (Live) *****");
+
+		// one thread: a live stream with no item yet does not hold it
+		StreamExecutor executor = new StreamExecutor(1, 16);
+		LiveFeed<Integer> feed = new LiveFeed<>();
+		SCollector<Integer> live = S.collector();
+		StreamExecutor.Stats liveStats = executor.submit("live", feed, Q.map(x -> 2 * x), live);
+		SLastCount<Long> recorded = new SLastCount<Long>() {
+			@Override
+			public void end() {
+				// do not print
+			}
+		};
+		StreamExecutor.Stats recordedStats =
+			executor.submit("recorded", Q.intStream(1000), Q.fold(0L, (x, y) -> x + y), recorded);
+		long deadline = System.nanoTime() + 5_000_000_000L;
+		while (!recordedStats.isDone() && System.nanoTime() < deadline) {
+			Thread.sleep(1);
+		}
+		assertTrue(recordedStats.isDone());
+		assertEquals(500500L, recorded.last.longValue());
+		assertFalse(liveStats.isDone());
+
+		// the samples arrive over time (a burst every 2 msec)
+		Thread device = new Thread(() -> {
+			try {
+				for (int i=1; i<=100; i++) {
+					feed.push(i);
+					if (i % 10 == 0) {
+						Thread.sleep(2);
+					}
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			feed.close();
+		});
+		device.start();
+		executor.awaitAll();
+		executor.shutdown();
+		device.join();
+
+		assertTrue(liveStats.isDone());
+		assertNull(liveStats.error());
+		assertEquals(100, liveStats.items());
+		assertEquals(100, live.list.size());
+		for (int i=1; i<=100; i++) {
+			assertEquals(2 * i, live.list.get(i - 1).intValue());
+		}
+		assertTrue(liveStats.maxLagMsec() >= liveStats.avgLagMsec());
+		assertTrue(liveStats.avgLagMsec() > 0.0);
+		System.out.println(liveStats);
+	}
+
+	@Test
+	public void testInstrument() {
+		System.out.println("***** Test Instrument *****");
+
+		Metrics metrics = new Metrics();
+		int n = 10_000;
+		Query<Integer,Long> q = Q.pipeline(
+			Q.instrument("filter", Q.filter(x -> x % 4 == 0), metrics),
+			Q.instrument("dup", Q.dup(), metrics),
+			Q.instrument("fold", Q.fold(0L, (x, y) -> x + y), metrics)
+		);
+		SLastCount<Long> sink = S.lastCount();
+		Q.execute(Q.intStream(n), q, sink);
+		assertEquals(1, sink.count);
+
+		assertEquals(n, metrics.get("filter").itemsIn());
+		assertEquals(n / 4, metrics.get("filter").itemsOut());
+		assertEquals(0.25, metrics.get("filter").selectivity(), 1e-9);
+		assertEquals(n / 4, metrics.get("dup").itemsIn());
+		assertEquals(n / 2, metrics.get("dup").itemsOut());
+		assertEquals(n / 2, metrics.get("fold").itemsIn());
+		assertEquals(1, metrics.get("fold").itemsOut());
+		assertTrue(metrics.get("filter").nanosPerItem() > 0.0);
+		System.out.print(metrics.report());
+	}
+
+	@Test
+	public void testInstrumentAll() {
+		System.out.println("***** Test Instrument All *****");
+
+		Metrics metrics = new Metrics();
+		int n = 1000;
+		Query<Integer,Integer> q1 = Q.filter(x -> x % 2 == 1);
+		Query<Integer,Integer> q2 = Q.pipeline(Q.filter(x -> x % 2 == 0), Q.emit(10, 0));
+		Query<Integer,Integer> q = Q.instrumentAll(
+			"q", Q.pipeline(Q.parallel(q1, q2, Integer::sum), Q.map(x -> x + 1)), metrics
+		);
+		SLastCount<Integer> sink = S.lastCount();
+		Q.execute(Q.intStream(n), q, sink);
+
+		// q = Pipeline(Parallel(Filter, Pipeline(Filter, Emit)), Map)
+		assertEquals(n, metrics.get("q Pipeline").itemsIn());
+		assertEquals(n / 2, metrics.get("q Pipeline").itemsOut());
+		assertEquals(n, metrics.get("q/0 Parallel").itemsIn());
+		assertEquals(n / 2, metrics.get("q/0/0 Filter").itemsOut());
+		assertEquals(n / 2, metrics.get("q/0/1/0 Filter").itemsOut());
+		assertEquals(n / 2 + 10, metrics.get("q/0/1/1 Emit").itemsOut());
+		assertEquals(n / 2, metrics.get("q/1 Map").itemsIn());
+		// the second branch runs ahead by the 10 emitted items
+		assertEquals(10, metrics.get("q/0 Parallel").peakBuffered());
+		assertEquals(7, metrics.all().size());
+		System.out.print(metrics.report());
+
+		// the composites do not include the time of their components, so
+		// the slowest node is the expensive stage
+		Metrics metrics2 = new Metrics();
+		Query<Integer,Integer> expensive = Q.map(x -> {
+			double sum = 0.0;
+			for (int i=1; i<=2000; i++) {
+				sum += Math.sqrt(x + i);
+			}
+			return sum >= 0.0 ? x : -x;
+		});
+		Query<Integer,Integer> p = Q.instrumentAll(
+			"p", Q.pipeline(Q.map(x -> x + 1), Q.pipeline(expensive, Q.filter(x -> x % 3 != 0))), metrics2
+		);
+		Q.execute(Q.intStream(20_000), p, S.lastCount());
+		System.out.print(metrics2.report());
+		assertEquals("p/1/0 Map", metrics2.slowest().name);
+	}
+
+	@Test
+	public void testMeasure() {
+		System.out.println("***** Test Measure *****");
+
+		int n = 10_000;
+		SLastCount<Integer> sink = new SLastCount<>() {
+			@Override
+			public void end() {
+				// no printing
+			}
+		};
+		ExecutionStats stats = Q.measure(
+			() -> Q.intStream(n), Q.filter(x -> x % 4 == 0), sink, 2, 5
+		);
+		assertEquals(2, stats.warmups);
+		assertEquals(5, stats.runs);
+		for (int i=0; i<stats.runs; i++) {
+			assertEquals(n, stats.itemsIn(i));
+			assertEquals(n / 4, stats.itemsOut(i));
+			assertTrue(stats.nanos(i) > 0);
+		}
+		// the sink sees every run, warmups included
+		assertEquals(7L * (n / 4), sink.count);
+		assertTrue(stats.minThroughput() <= stats.medianThroughput());
+		assertTrue(stats.medianThroughput() <= stats.throughputPercentile(90));
+		assertTrue(stats.throughputPercentile(90) <= stats.maxThroughput());
+		assertEquals(stats.minThroughput(), stats.throughputPercentile(0), 0.0);
+		assertEquals(stats.maxThroughput(), stats.throughputPercentile(100), 0.0);
+
+		IntSink intSink = S.intLastCount();
+		ExecutionStats intStats = Q.measure(
+			() -> Q.intStream(n), Q.intMap(x -> x + 1), intSink, 1, 3
+		);
+		assertEquals(n, intStats.itemsOut(2));
+		// the unboxed map allocates nothing per item
+		if (intStats.allocatedBytesPerRun() >= 0) {
+			assertTrue(intStats.allocatedBytesPerItem() < 1.0);
+		}
+		System.out.println(stats);
+		System.out.println(intStats);
+	}
+
+}
@@ -2,6 +2,20 @@ package test;
 
 import static org.junit.Assert.*;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.PrimitiveIterator;
+import java.util.Set;
+
 import org.junit.Before;
 import org.junit.Test;
 
@@ -169,4 +183,601 @@ public class UTestECG {
 		assertEquals(4765, tsPeak3);
 	}
 
+	@Test
+	public void testPeakDetectionAsync() {
+		System.out.println("***** Test Peak Detection (Async) *****");
+
+		SCollector<Long> sink1 = S.collector();
+		SCollector<Long> sink2 = S.collector();
+		Q.execute(Data.ecgStream("100.csv"), PeakDetection.qPeaks(), sink1);
+		Q.execute(Data.ecgStream("100.csv"), PeakDetection.qPeaksAsync(), sink2);
+
+		assertEquals(sink1.list, sink2.list);
+	}
+
+	@Test
+	public void testBeatSegmentation() {
+		System.out.println("***** Test Beat Segmentation *****");
+
+		SCollector<Long> peaks = S.collector();
+		Q.execute(Data.ecgStream("100.csv"), PeakDetection.qPeaks(), peaks);
+		Set<Long> peakSet = new HashSet<>(peaks.list);
+
+		// one segment per beat: from a peak to the sample before the next
+		// one, summarized as { first ts, number of samples, max value }
+		Query<Integer,VT> toVT = Q.scan(new VT(0, -1), (vt, v) -> new VT(v, vt.ts + 1));
+		Query<VT,long[]> beats = Q.sessionWindow(
+			vt -> peakSet.contains(vt.ts),
+			w -> {
+				int max = Integer.MIN_VALUE;
+				for (int i=0; i<w.size(); i++) {
+					max = Math.max(max, w.get(i).v);
+				}
+				return new long[] { w.get(0).ts, w.size(), max };
+			}
+		);
+		SCollector<long[]> sink = S.collector();
+		Q.execute(Data.ecgStream("100.csv"), Q.pipeline(toVT, beats), sink);
+
+		// the samples before the first peak, then one segment per peak
+		assertEquals(peaks.list.size() + 1, sink.list.size());
+		long total = 0;
+		for (int i=0; i<sink.list.size(); i++) {
+			long[] beat = sink.list.get(i);
+			if (i > 0) {
+				assertEquals(peaks.list.get(i - 1).longValue(), beat[0]);
+			}
+			total += beat[1];
+		}
+		assertEquals(0, sink.list.get(0)[0]);
+		long n = 0;
+		Iterator<Integer> it = Data.ecgStream("100.csv");
+		while (it.hasNext()) {
+			it.next();
+			n += 1;
+		}
+		assertEquals(n, total);
+	}
+
+	@Test
+	public void testCsvReader() throws IOException {
+		System.out.println("***** Test CSV Reader *****");
+
+		// same samples as IteratorECG
+		for (String file : new String[] { "100.csv", "100-samples-200.csv", "beat.csv" }) {
+			IteratorECG expected = new IteratorECG("data/" + file);
+			CsvReaderECG actual = new CsvReaderECG("data/" + file);
+			while (expected.hasNext()) {
+				assertTrue(actual.hasNext());
+				assertEquals(expected.nextInt(), actual.nextInt());
+			}
+			assertFalse(actual.hasNext());
+		}
+
+		// a file larger than the read block, with CRLF line endings, empty
+		// lines, negative values and no newline at the end
+		Path path = Files.createTempFile("ecg", ".csv");
+		try {
+			int n = 100_000;
+			StringBuilder str = new StringBuilder();
+			for (int i=0; i<n; i++) {
+				str.append(i).append(',').append(i % 2048 - 1024).append(',').append(7);
+				str.append(i % 1000 == 0 ? "\r\n\r\n" : "\n");
+			}
+			str.setLength(str.length() - 1);
+			Files.write(path, str.toString().getBytes(StandardCharsets.US_ASCII));
+
+			CsvReaderECG reader = new CsvReaderECG(path.toString());
+			int[] batch = new int[4096];
+			int i = 0;
+			assertTrue(reader.hasNext());
+			int len = reader.fill(batch, 0, batch.length);
+			while (len > 0) {
+				for (int j=0; j<len; j++) {
+					assertEquals((i + j) % 2048 - 1024, batch[j]);
+				}
+				i += len;
+				if (i < n) {
+					assertEquals(i % 2048 - 1024, reader.nextInt()); // mixed with next()
+					i += 1;
+				}
+				len = reader.fill(batch, 0, batch.length);
+			}
+			assertEquals(n, i);
+			assertFalse(reader.hasNext());
+
+			CsvReaderECG ts = new CsvReaderECG(path.toString(), 0);
+			long count = 0;
+			while (ts.hasNext()) {
+				assertEquals(count, ts.nextInt());
+				count += 1;
+			}
+			assertEquals(n, count);
+		} finally {
+			Files.delete(path);
+		}
+
+		// malformed values are rejected
+		path = Files.createTempFile("ecg", ".csv");
+		try {
+			String[] bad = { "0,12a,3\n", "1,99999999999,3\n", "2,,3\n", "3,1 ,3\n", "4,-\n" };
+			for (String line : bad) {
+				Files.write(path, ("7,5,5\n" + line).getBytes(StandardCharsets.US_ASCII));
+				CsvReaderECG reader = new CsvReaderECG(path.toString());
+				assertEquals(5, reader.nextInt());
+				try {
+					reader.nextInt();
+					fail(line);
+				} catch (NumberFormatException e) {
+					// expected
+				}
+				reader.close();
+			}
+			Files.write(path, "0,2147483647,3\r\n1,-2147483647".getBytes(StandardCharsets.US_ASCII));
+			CsvReaderECG reader = new CsvReaderECG(path.toString());
+			assertEquals(Integer.MAX_VALUE, reader.nextInt());
+			assertEquals(-Integer.MAX_VALUE, reader.nextInt());
+			assertFalse(reader.hasNext());
+		} finally {
+			Files.delete(path);
+		}
+	}
+
+	@Test
+	public void testBinaryFormat() throws IOException {
+		System.out.println("***** Test Binary Format *****");
+
+		Path path = Files.createTempFile("ecg", ".ecgb");
+		try {
+			BinaryECG.convert("data/100.csv", path.toString(), 360);
+			BinaryECG ecg = BinaryECG.open(path.toString());
+			assertEquals(360.0, ecg.samplingRate, 0.0);
+			assertEquals(2, ecg.channels);
+			assertEquals(0, ecg.start);
+
+			// same samples as the CSV file, for both channels
+			for (int c=0; c<2; c++) {
+				CsvReaderECG expected = new CsvReaderECG("data/100.csv", c + 1);
+				BinaryECG.Reader actual = ecg.reader(c);
+				int n = 0;
+				while (expected.hasNext()) {
+					assertTrue(actual.hasNext());
+					assertEquals(expected.nextInt(), actual.nextInt());
+					n += 1;
+				}
+				assertFalse(actual.hasNext());
+				assertEquals(n, ecg.samples);
+			}
+
+			// batches mixed with next()
+			BinaryECG.Reader reader = ecg.reader(0);
+			CsvReaderECG expected = new CsvReaderECG("data/100.csv");
+			int[] batch = new int[1000];
+			int len = reader.fill(batch, 0, batch.length);
+			while (len > 0) {
+				for (int j=0; j<len; j++) {
+					assertEquals(expected.nextInt(), batch[j]);
+				}
+				if (reader.hasNext()) {
+					assertEquals(expected.nextInt(), reader.nextInt());
+				}
+				len = reader.fill(batch, 0, batch.length);
+			}
+			assertFalse(expected.hasNext());
+
+			// same peaks
+			Path copy = Files.createTempFile(Path.of("data"), "100", ".ecgb");
+			try {
+				Files.copy(path, copy, StandardCopyOption.REPLACE_EXISTING);
+				SCollector<Long> peaksCsv = S.collector();
+				SCollector<Long> peaksBin = S.collector();
+				Q.execute(Data.ecgStream("100.csv"), PeakDetection.qPeaks(), peaksCsv);
+				Q.execute(Data.ecgStream(copy.getFileName().toString()), PeakDetection.qPeaks(), peaksBin);
+				assertEquals(peaksCsv.list, peaksBin.list);
+			} finally {
+				Files.delete(copy);
+			}
+		} finally {
+			Files.delete(path);
+		}
+
+		// header values and the int16 range
+		path = Files.createTempFile("ecg", ".ecgb");
+		try {
+			BinaryECG.write(path.toString(), 250.0, 1_000_000_000_000L,
+				new int[] { -32768, 0, 32767 });
+			BinaryECG ecg = BinaryECG.open(path.toString());
+			assertEquals(250.0, ecg.samplingRate, 0.0);
+			assertEquals(1, ecg.channels);
+			assertEquals(1_000_000_000_000L, ecg.start);
+			assertEquals(3, ecg.samples);
+			assertEquals(-32768, ecg.channel(0).get(0));
+			assertEquals(32767, ecg.channel(0).get(2));
+			try {
+				BinaryECG.write(path.toString(), 250.0, 0, new int[] { 1, 2 }, new int[] { 3, 40000 });
+				fail();
+			} catch (IllegalArgumentException e) {
+				// expected
+			}
+			// the file was not touched
+			ecg = BinaryECG.open(path.toString());
+			assertEquals(1, ecg.channels);
+			assertEquals(3, ecg.samples);
+			assertEquals(32767, ecg.channel(0).get(2));
+		} finally {
+			Files.delete(path);
+		}
+
+		// timestamps with a gap or a duplicate cannot be converted
+		for (String csv : new String[] { "5,1,2\n6,3,4\n8,5,6\n", "5,1,2\n6,3,4\n6,5,6\n" }) {
+			Path in = Files.createTempFile("ecg", ".csv");
+			path = Files.createTempFile("ecg", ".ecgb");
+			try {
+				Files.write(in, csv.getBytes(StandardCharsets.US_ASCII));
+				try {
+					BinaryECG.convert(in.toString(), path.toString(), 360);
+					fail();
+				} catch (IllegalArgumentException e) {
+					assertTrue(e.getMessage().contains("sample 2"));
+				}
+				assertEquals(0, Files.size(path));
+			} finally {
+				Files.delete(in);
+				Files.delete(path);
+			}
+		}
+
+		// a corrupted sample count that overflows the size check
+		path = Files.createTempFile("ecg", ".ecgb");
+		try {
+			BinaryECG.write(path.toString(), 360.0, 0, new int[] { 1, 2, 3 }, new int[] { 4, 5, 6 });
+			try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+				ByteBuffer count = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+				count.putLong(0, Long.MAX_VALUE / 2 + 1);
+				channel.write(count, 32);
+			}
+			try {
+				BinaryECG.open(path.toString());
+				fail();
+			} catch (IllegalArgumentException e) {
+				assertEquals("corrupted ECGB header", e.getMessage());
+			}
+		} finally {
+			Files.delete(path);
+		}
+	}
+
+	// Format 212: two 12-bit samples in three bytes. An odd last sample
+	// takes two bytes.
+	private static byte[] encode212(int[] samples) {
+		byte[] bytes = new byte[(samples.length * 3 + 1) / 2];
+		int p = 0;
+		for (int i=0; i<samples.length; i+=2) {
+			int s0 = samples[i] & 0xFFF;
+			int s1 = i + 1 < samples.length ? samples[i + 1] & 0xFFF : 0;
+			bytes[p++] = (byte) s0;
+			bytes[p++] = (byte) ((s0 >> 8) | ((s1 >> 8) << 4));
+			if (i + 1 < samples.length) {
+				bytes[p++] = (byte) s1;
+			}
+		}
+		return bytes;
+	}
+
+	@Test
+	public void testMitBihRecord() throws IOException {
+		System.out.println("***** Test MIT-BIH Record *****");
+
+		Path dir = Files.createTempDirectory("mitdb");
+		try {
+			// record 100 (the samples of 100.csv)
+			int n = 0;
+			int[][] channels = new int[2][650_000];
+			for (int c=0; c<2; c++) {
+				CsvReaderECG csv = new CsvReaderECG("data/100.csv", c + 1);
+				n = csv.fill(channels[c], 0, channels[c].length);
+			}
+			int[] frames = new int[2 * n];
+			for (int i=0; i<n; i++) {
+				frames[2 * i] = channels[0][i];
+				frames[2 * i + 1] = channels[1][i];
+			}
+			Files.write(dir.resolve("100.dat"), encode212(frames));
+			Files.write(dir.resolve("100.hea"), (
+				"100 2 360 " + n + "\n" +
+				"100.dat 212 200 11 1024 995 -22131 0 MLII\n" +
+				"100.dat 212 200 11 1024 1011 20052 0 V5\n" +
+				"# 69 M 1085 1629 x1\n").getBytes(StandardCharsets.US_ASCII));
+
+			MitBihRecord record = MitBihRecord.open(dir.resolve("100.hea").toString());
+			assertEquals("100", record.name);
+			assertEquals(2, record.signals);
+			assertEquals(360.0, record.samplingRate, 0.0);
+			assertEquals(n, record.samples);
+			assertEquals(200.0, record.gain(1), 0.0);
+			assertEquals(1024, record.baseline(1));
+			assertEquals("V5", record.description(1));
+
+			for (int c=0; c<2; c++) {
+				CsvReaderECG expected = new CsvReaderECG("data/100.csv", c + 1);
+				MitBihRecord.Reader actual = record.reader(c);
+				while (expected.hasNext()) {
+					assertTrue(actual.hasNext());
+					assertEquals(expected.nextInt(), actual.nextInt());
+				}
+				assertFalse(actual.hasNext());
+			}
+
+			// batches mixed with next()
+			MitBihRecord.Reader reader = record.reader(0);
+			int[] batch = new int[1000];
+			int i = 0;
+			int len = reader.fill(batch, 0, batch.length);
+			while (len > 0) {
+				for (int j=0; j<len; j++) {
+					assertEquals(channels[0][i + j], batch[j]);
+				}
+				i += len;
+				if (reader.hasNext()) {
+					assertEquals(channels[0][i], reader.nextInt());
+					i += 1;
+				}
+				len = reader.fill(batch, 0, batch.length);
+			}
+			assertEquals(n, i);
+
+			PrimitiveIterator.OfDouble mV = record.physicalReader(1);
+			for (i=0; i<1000; i++) {
+				assertEquals((channels[1][i] - 1024) / 200.0, mV.nextDouble(), 1e-12);
+			}
+
+			// three signals (odd number of samples per block), negative
+			// values, explicit baseline, no sample count
+			int m = 20_001;
+			frames = new int[3 * m];
+			for (i=0; i<frames.length; i++) {
+				frames[i] = (i * 7919) % 4096 - 2048;
+			}
+			Files.write(dir.resolve("x.dat"), encode212(frames));
+			Files.write(dir.resolve("x.hea"), (
+				"x 3 250\n" +
+				"x.dat 212 100(-5)/mV 12 0\n" +
+				"x.dat 212\n" +
+				"x.dat 212 0 12 7\n").getBytes(StandardCharsets.US_ASCII));
+			record = MitBihRecord.open(dir.resolve("x.hea").toString());
+			assertEquals(-1, record.samples);
+			assertEquals(100.0, record.gain(0), 0.0);
+			assertEquals(-5, record.baseline(0));
+			assertEquals(200.0, record.gain(2), 0.0);
+			assertEquals(7, record.baseline(2));
+			for (int c=0; c<3; c++) {
+				reader = record.reader(c);
+				for (i=0; i<m; i++) {
+					assertEquals(frames[3 * i + c], reader.nextInt());
+				}
+				assertFalse(reader.hasNext());
+			}
+		} finally {
+			try (java.util.stream.Stream<Path> files = Files.list(dir)) {
+				for (Path file : (Iterable<Path>) files::iterator) {
+					Files.delete(file);
+				}
+			}
+			Files.delete(dir);
+		}
+	}
+
+	@Test
+	public void testSampleSource() throws IOException {
+		System.out.println("***** Test Sample Source *****");
+
+		// same columns as CsvReaderECG
+		CsvSampleReader samples = new CsvSampleReader("data/100.csv");
+		assertEquals(2, samples.channels());
+		CsvReaderECG ts = new CsvReaderECG("data/100.csv", 0);
+		CsvReaderECG ch0 = new CsvReaderECG("data/100.csv", 1);
+		CsvReaderECG ch1 = new CsvReaderECG("data/100.csv", 2);
+		Sample first = null;
+		while (ts.hasNext()) {
+			assertTrue(samples.hasNext());
+			Sample sample = samples.next();
+			first = first == null ? sample : first;
+			assertSame(first, sample); // reused
+			assertEquals(ts.nextInt(), sample.ts);
+			assertEquals(ch0.nextInt(), sample.v[0]);
+			assertEquals(ch1.nextInt(), sample.v[1]);
+		}
+		assertFalse(samples.hasNext());
+
+		// batches mixed with next(), from the CSV and the binary file
+		Path path = Files.createTempFile("ecg", ".ecgb");
+		try {
+			BinaryECG.convert("data/100.csv", path.toString(), 360);
+			SampleSource[] sources = {
+				new CsvSampleReader("data/100.csv"),
+				BinaryECG.open(path.toString()).samples()
+			};
+			for (SampleSource source : sources) {
+				ts = new CsvReaderECG("data/100.csv", 0);
+				ch0 = new CsvReaderECG("data/100.csv", 1);
+				ch1 = new CsvReaderECG("data/100.csv", 2);
+				SampleBatch batch = new SampleBatch(2, 999);
+				int n = 0;
+				while (source.fill(batch) > 0) {
+					for (int i=0; i<batch.size; i++) {
+						assertEquals(ts.nextInt(), batch.ts[i]);
+						assertEquals(ch0.nextInt(), batch.channel(0)[i]);
+						assertEquals(ch1.nextInt(), batch.channel(1)[i]);
+					}
+					n += batch.size;
+					if (source.hasNext()) {
+						Sample sample = source.next();
+						assertEquals(ts.nextInt(), sample.ts);
+						assertEquals(ch0.nextInt(), sample.v[0]);
+						assertEquals(ch1.nextInt(), sample.v[1]);
+						n += 1;
+					}
+				}
+				assertEquals(5000, n);
+				assertFalse(ts.hasNext());
+				source.close();
+			}
+		} finally {
+			Files.delete(path);
+		}
+
+		// same peaks as qPeaks, with the timestamps of the file
+		SCollector<Long> expected = S.collector();
+		SCollector<Long> actual = S.collector();
+		Q.execute(Data.ecgStream("100.csv"), PeakDetection.qPeaks(), expected);
+		Q.execute(Data.ecgSamples("100.csv"), PeakDetection.qPeaks(0), actual);
+		assertFalse(expected.list.isEmpty());
+		assertEquals(expected.list, actual.list);
+
+		// three channels, negative values, large timestamps, CRLF line
+		// endings and empty lines
+		path = Files.createTempFile("ecg", ".csv");
+		try {
+			int n = 50_000;
+			StringBuilder str = new StringBuilder();
+			for (int i=0; i<n; i++) {
+				str.append(10_000_000_000L + i).append(',').append(i % 2048 - 1024)
+					.append(',').append(-i).append(',').append(i % 7);
+				str.append(i % 1000 == 0 ? "\r\n\r\n" : "\n");
+			}
+			Files.write(path, str.toString().getBytes(StandardCharsets.US_ASCII));
+			samples = new CsvSampleReader(path.toString());
+			assertEquals(3, samples.channels());
+			SampleBatch batch = new SampleBatch(3, 4096);
+			int i = 0;
+			while (samples.fill(batch) > 0) {
+				for (int j=0; j<batch.size; j++, i++) {
+					assertEquals(10_000_000_000L + i, batch.ts[j]);
+					assertEquals(i % 2048 - 1024, batch.channels[0][j]);
+					assertEquals(-i, batch.channels[1][j]);
+					assertEquals(i % 7, batch.channels[2][j]);
+				}
+			}
+			assertEquals(n, i);
+
+			// malformed values are rejected in every column
+			String[] bad = { "0,12a,3\n", "1,2,99999999999\n", "2,3\n", "3x,3,4\n" };
+			for (String line : bad) {
+				Files.write(path, ("7,5,5\n" + line).getBytes(StandardCharsets.US_ASCII));
+				samples = new CsvSampleReader(path.toString());
+				assertEquals(5, samples.next().v[1]);
+				try {
+					samples.next();
+					fail(line);
+				} catch (NumberFormatException e) {
+					// expected
+				}
+				samples.close();
+			}
+		} finally {
+			Files.delete(path);
+		}
+	}
+
+	@Test
+	public void testPrefetchReader() throws IOException {
+		System.out.println("***** Test Prefetch Reader *****");
+
+		// same samples as CsvReaderECG, with small chunks and every way
+		// of reading mixed
+		int[] expected = new int[5000];
+		assertEquals(5000, new CsvReaderECG("data/100.csv").fill(expected, 0, expected.length));
+		for (int chunks : new int[] { 1, 2, 8 }) {
+			PrefetchReader reader = new PrefetchReader(new CsvReaderECG("data/100.csv"), 97, chunks);
+			int[] batch = new int[50];
+			int i = 0;
+			while (reader.hasNext()) {
+				assertEquals(expected[i], reader.nextInt());
+				i += 1;
+				int len = reader.fill(batch, 0, batch.length);
+				for (int j=0; j<len; j++) {
+					assertEquals(expected[i + j], batch[j]);
+				}
+				i += len;
+				len = reader.nextBatch();
+				for (int j=0; j<len; j++) {
+					assertEquals(expected[i + j], reader.batch()[j]);
+				}
+				i += len;
+			}
+			assertEquals(expected.length, i);
+			assertEquals(0, reader.nextBatch());
+			reader.close();
+		}
+
+		// same output as the synchronous reader
+		SCollector<Long> peaks = S.collector();
+		SCollector<Long> peaksPrefetch = S.collector();
+		Q.execute(Data.ecgStream("100.csv"), PeakDetection.qPeaks(), peaks);
+		Q.execute(Data.ecgStreamPrefetch("100.csv"), PeakDetection.qPeaks(), peaksPrefetch);
+		assertEquals(peaks.list, peaksPrefetch.list);
+
+		SDoubleLastCount length = S.doubleLastCount();
+		SDoubleLastCount lengthPrefetch = S.doubleLastCount();
+		Q.execute(Data.ecgStream("100.csv"), PeakDetection.qLengthUnboxed(), length);
+		Q.executeBatch(Data.ecgStreamPrefetch("100.csv"), PeakDetection.qLengthUnboxed(), lengthPrefetch);
+		assertEquals(length.count, lengthPrefetch.count);
+		assertEquals(length.last, lengthPrefetch.last, 0.0);
+
+		// closing early stops the worker, which closes the source
+		boolean[] closed = new boolean[1];
+		IntSource endless = new IntSource() {
+			@Override
+			public boolean hasNext() {
+				return true;
+			}
+			@Override
+			public int nextInt() {
+				return 1;
+			}
+			@Override
+			public int fill(int[] dst, int off, int len) {
+				java.util.Arrays.fill(dst, off, off + len, 1);
+				return len;
+			}
+			@Override
+			public void close() {
+				closed[0] = true;
+			}
+		};
+		PrefetchReader reader = new PrefetchReader(endless, 16, 4);
+		assertEquals(1, reader.nextInt());
+		reader.close();
+		assertTrue(closed[0]);
+		assertFalse(reader.hasNext());
+
+		// a failure of the source is rethrown by the consumer
+		IntSource failing = new IntSource() {
+			@Override
+			public boolean hasNext() {
+				return true;
+			}
+			@Override
+			public int nextInt() {
+				throw new IllegalArgumentException("bad sample");
+			}
+			@Override
+			public int fill(int[] dst, int off, int len) {
+				throw new IllegalArgumentException("bad sample");
+			}
+			@Override
+			public void close() {
+				// nothing to do
+			}
+		};
+		reader = new PrefetchReader(failing, 16, 4);
+		try {
+			reader.hasNext();
+			fail();
+		} catch (IllegalStateException e) {
+			assertEquals("bad sample", e.getCause().getMessage());
+		}
+		reader.close();
+	}
+
 }
@@ -0,0 +1,148 @@
+package utils;
+
+import java.util.NoSuchElementException;
+
+// Double-ended queue of unboxed doubles in a circular buffer (e.g., the items
+// of a sliding window).
+//
+// The capacity is a power of two, so that slots are found with a mask
+// instead of a division. addLast doubles the capacity when the ring is
+// full; a ring that is created with the capacity it needs (e.g., the
+// window size) never allocates again. Index i is relative to the oldest
+// item: get(0) == first() and get(size()-1) == last().
+
+public class DoubleRing {
+
+	private double[] buffer;
+	private int mask;
+	private int head; // slot of the oldest item
+	private int size; // number of items
+
+	public DoubleRing(int capacity) {
+		if (capacity < 1 || capacity > (1 << 30)) {
+			throw new IllegalArgumentException("capacity should be in [1, 2^30]");
+		}
+		int length = Integer.highestOneBit(capacity);
+		if (length < capacity) {
+			length *= 2;
+		}
+		this.buffer = new double[length];
+		this.mask = length - 1;
+		this.head = 0;
+		this.size = 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int capacity() {
+		return buffer.length;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public boolean isFull() {
+		return size == buffer.length;
+	}
+
+	public void clear() {
+		head = 0;
+		size = 0;
+	}
+
+	public void addLast(double item) {
+		if (size == buffer.length) {
+			grow(size + 1);
+		}
+		buffer[(head + size) & mask] = item;
+		size += 1;
+	}
+
+	public double removeFirst() {
+		if (size == 0) {
+			throw new NoSuchElementException();
+		}
+		double item = buffer[head];
+		head = (head + 1) & mask;
+		size -= 1;
+		return item;
+	}
+
+	public double removeLast() {
+		if (size == 0) {
+			throw new NoSuchElementException();
+		}
+		size -= 1;
+		return buffer[(head + size) & mask];
+	}
+
+	public double first() {
+		if (size == 0) {
+			throw new NoSuchElementException();
+		}
+		return buffer[head];
+	}
+
+	public double last() {
+		if (size == 0) {
+			throw new NoSuchElementException();
+		}
+		return buffer[(head + size - 1) & mask];
+	}
+
+	public double get(int i) {
+		if (i < 0 || i >= size) {
+			throw new IndexOutOfBoundsException(i);
+		}
+		return buffer[(head + i) & mask];
+	}
+
+	// Appends src[off], ..., src[off+len-1].
+	public void addAll(double[] src, int off, int len) {
+		if (size + len > buffer.length) {
+			grow(size + len);
+		}
+		int tail = (head + size) & mask;
+		int n1 = Math.min(len, buffer.length - tail);
+		System.arraycopy(src, off, buffer, tail, n1);
+		System.arraycopy(src, off + n1, buffer, 0, len - n1);
+		size += len;
+	}
+
+	// Copies the items i, ..., i+len-1 to dst[off], ..., dst[off+len-1].
+	public void copyTo(int i, double[] dst, int off, int len) {
+		if (i < 0 || len < 0 || i + len > size) {
+			throw new IndexOutOfBoundsException(i + len);
+		}
+		int from = (head + i) & mask;
+		int n1 = Math.min(len, buffer.length - from);
+		System.arraycopy(buffer, from, dst, off, n1);
+		System.arraycopy(buffer, 0, dst, off + n1, len - n1);
+	}
+
+	// Copies all the items, oldest first, to dst[off], ... and returns
+	// their number.
+	public int copyTo(double[] dst, int off) {
+		copyTo(0, dst, off, size);
+		return size;
+	}
+
+	private void grow(int minCapacity) {
+		if (minCapacity > (1 << 30)) {
+			throw new IllegalStateException("DoubleRing is too large");
+		}
+		int length = buffer.length;
+		while (length < minCapacity) {
+			length *= 2;
+		}
+		double[] larger = new double[length];
+		copyTo(0, larger, 0, size);
+		buffer = larger;
+		mask = length - 1;
+		head = 0;
+	}
+
+}
@@ -0,0 +1,211 @@
+package utils;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// Bounded lock-free single-producer/single-consumer ring buffer.
+//
+// Exactly one thread may call put/offer/close (the producer) and
+// exactly one thread may call take/poll/cancel (the consumer).
+//
+// The capacity is rounded up to a power of two, so that slots are
+// found with a mask instead of a division. An item is visible to the
+// consumer as soon as it is stored in its slot (the consumer reads the
+// slot itself, not the producer's position), so there is no delay for
+// a producer that goes idle in the middle of a batch. Only the freed
+// slots are published in batches: the consumer publishes its position
+// every 'batch' items (or when the ring is empty).
+//
+// A full ring blocks the producer (backpressure), an empty ring blocks
+// the consumer. A blocked side spins and yields for a short while and
+// then parks until the other side signals it (the producer after
+// storing an item or closing, the consumer after freeing slots or
+// cancelling). The park has a timeout as a backstop against a signal
+// that crosses the registration of the waiting thread. Items must not
+// be null.
+
+public class SpscRing<A> {
+
+	private static final VarHandle SLOTS = MethodHandles.arrayElementVarHandle(Object[].class);
+	private static final int SPINS = 100;
+	private static final int YIELDS = 1000;
+	private static final int PARK_AFTER = 200; // put and take
+	private static final long PARK_NANOS = 1_000_000;
+
+	private final Object[] slots;
+	private final int capacity;
+	private final int mask;
+	private final int batch;
+
+	private final AtomicLong head = new AtomicLong(); // published by the consumer
+	private volatile boolean closed; // no more items (set by the producer)
+	private volatile boolean cancelled; // no more takes (set by the consumer)
+	private volatile Thread parkedProducer; // waiting for free slots
+	private volatile Thread parkedConsumer; // waiting for items
+
+	// producer state
+	private long tail;
+	private long headCache;
+
+	// consumer state
+	private long headLocal;
+	private long headPublished;
+
+	public SpscRing(int capacity, int batch) {
+		if (capacity < 1 || capacity > (1 << 30)) {
+			throw new IllegalArgumentException("capacity should be in [1, 2^30]");
+		}
+		if (batch < 1) {
+			throw new IllegalArgumentException("batch should be >= 1");
+		}
+		int size = Integer.highestOneBit(capacity);
+		if (size < capacity) {
+			size *= 2;
+		}
+		this.slots = new Object[size];
+		this.capacity = size;
+		this.mask = size - 1;
+		this.batch = Math.min(batch, size);
+	}
+
+	public SpscRing(int capacity) {
+		this(capacity, Math.max(1, capacity / 16));
+	}
+
+	public int capacity() {
+		return capacity;
+	}
+
+	// Producer: append an item, waiting while the ring is full.
+	public void put(A item) {
+		int idle = 0;
+		while (!offer(item)) {
+			if (cancelled) {
+				throw new CancellationException("consumer cancelled");
+			}
+			if (idle < PARK_AFTER) {
+				idle = idle(idle);
+			} else {
+				parkedProducer = Thread.currentThread();
+				if (tail - head.get() == capacity && !cancelled) {
+					LockSupport.parkNanos(this, PARK_NANOS);
+				}
+				parkedProducer = null;
+			}
+		}
+	}
+
+	// Producer: append an item if there is room, or return false.
+	public boolean offer(A item) {
+		if (tail - headCache == capacity) {
+			headCache = head.get();
+			if (tail - headCache == capacity) {
+				return false;
+			}
+		}
+		SLOTS.setRelease(slots, (int) tail & mask, item);
+		tail += 1;
+		Thread consumer = parkedConsumer;
+		if (consumer != null) {
+			LockSupport.unpark(consumer);
+		}
+		return true;
+	}
+
+	// Producer: no more items will be appended.
+	public void close() {
+		closed = true;
+		Thread consumer = parkedConsumer;
+		if (consumer != null) {
+			LockSupport.unpark(consumer);
+		}
+	}
+
+	// Consumer: remove the oldest item, waiting while the ring is empty.
+	// Returns null once the ring is closed and all items are taken.
+	public A take() {
+		int idle = 0;
+		while (true) {
+			A item = poll();
+			if (item != null) {
+				return item;
+			}
+			if (closed) {
+				// every item was stored before 'closed' was set
+				return poll();
+			}
+			if (idle < PARK_AFTER) {
+				idle = idle(idle);
+			} else {
+				parkedConsumer = Thread.currentThread();
+				if (SLOTS.getVolatile(slots, (int) headLocal & mask) == null && !closed) {
+					LockSupport.parkNanos(this, PARK_NANOS);
+				}
+				parkedConsumer = null;
+			}
+		}
+	}
+
+	// Consumer: remove the oldest item if one is visible, or return null.
+	@SuppressWarnings("unchecked")
+	public A poll() {
+		int index = (int) headLocal & mask;
+		A item = (A) SLOTS.getAcquire(slots, index);
+		if (item == null) {
+			release();
+			return null;
+		}
+		slots[index] = null;
+		headLocal += 1;
+		if (headLocal - headPublished >= batch) {
+			release();
+		}
+		return item;
+	}
+
+	// Consumer: true if the ring is closed and all items have been taken.
+	public boolean isDrained() {
+		return closed && SLOTS.getAcquire(slots, (int) headLocal & mask) == null;
+	}
+
+	// Consumer: stop consuming. A producer blocked on a full ring
+	// (or blocking later) gets a CancellationException.
+	public void cancel() {
+		cancelled = true;
+		Thread producer = parkedProducer;
+		if (producer != null) {
+			LockSupport.unpark(producer);
+		}
+	}
+
+	// Publishes the freed slots (if any) and signals a parked producer.
+	private void release() {
+		if (headLocal == headPublished) {
+			return;
+		}
+		headPublished = headLocal;
+		head.lazySet(headLocal);
+		Thread producer = parkedProducer;
+		if (producer != null) {
+			LockSupport.unpark(producer);
+		}
+	}
+
+	// Wait a little: spin first, then yield, then park briefly. (For
+	// callers that wait on several rings at once; put and take park
+	// until they are signalled.)
+	public static int idle(int idle) {
+		if (idle < SPINS) {
+			Thread.onSpinWait();
+		} else if (idle < SPINS + YIELDS) {
+			Thread.yield();
+		} else {
+			LockSupport.parkNanos(1_000);
+		}
+		return idle + 1;
+	}
+
+}